@@ -28,6 +28,7 @@ public class BootCompletedReceiver extends BroadcastReceiver {
             Intent startIntent = new Intent(context, HardwareCollectorService.class);
             startIntent.setAction(action);
             context.startService(startIntent);
+            context.startService(new Intent(context, HardwareMonitorService.class));
         }
     }
 }
@@ -16,41 +16,69 @@
 package org.android_x86.hardwarecollector;
 
 import org.android_x86.analytics.AnalyticsHelper;
+import org.android_x86.analytics.BatteryState;
+import org.android_x86.analytics.BlockDevice;
 import org.android_x86.analytics.GeneralLogs;
+import org.android_x86.analytics.ProcFileReader;
 
 import android.app.IntentService;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.graphics.SurfaceTexture;
 import android.hardware.input.InputManager;
 import android.opengl.EGL14;
 import android.opengl.GLES20;
 import android.os.SystemProperties;
 import android.system.Os;
+import android.text.TextUtils;
+import android.util.AtomicFile;
 import android.util.Log;
 import android.view.InputDevice;
 
-import org.json.JSONObject;
-
 import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.egl.EGLContext;
 import javax.microedition.khronos.egl.EGLDisplay;
 import javax.microedition.khronos.egl.EGLSurface;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 
 public class HardwareCollectorService extends IntentService {
     private static final String TAG = "HardwareCollectorService";
 
-    private static final String GA_CATEGORY = "hardware_info";
+    /**
+     * Re-runs probes named by EXTRA_PROBES and patches the saved inventory.
+     */
+    public static final String ACTION_UPDATE_PROBES = "org.android_x86.hardwarecollector.UPDATE";
+    public static final String EXTRA_PROBES = "probes";
+
+    static final String PROBE_GPU = "gpu";
+    static final String PROBE_CPU = "cpu";
+    static final String PROBE_TOUCH_SCREEN = "touch_screen";
+    static final String PROBE_BATTERY = "battery";
+    static final String PROBE_NETWORK = "network";
+    static final String PROBE_SENSORS = "sensors";
+    static final String PROBE_MEMORY = "memory";
+    static final String PROBE_STORAGE = "storage";
+
+    // same category as former system core events
+    private static final String GA_CATEGORY = "system:hardware_info";
     private static final String GA_ACTION_GPU_RENDERER = "gpu_renderer";
     private static final String GA_ACTION_CPU_MODEL = "cpu_model";
+    private static final String GA_ACTION_CPU_CORES = "cpu_cores";
+    private static final String GA_ACTION_CPU_THREADS = "cpu_threads";
+    private static final String GA_ACTION_CPU_ISA_FLAGS = "cpu_isa_flags";
+    private static final String GA_ACTION_CPU_CACHE = "cpu_cache";
+    private static final String GA_ACTION_CPU_MAX_FREQ_MHZ = "cpu_max_freq_mhz";
+    private static final String GA_ACTION_MEM_TOTAL_MB = "mem_total_mb";
+    private static final String GA_ACTION_STORAGE = "storage";
     private static final String GA_ACTION_TOUCH_SCREEN_NAME = "touch_screen_name";
     private static final String GA_ACTION_HAS_BATTERY = "has_battery";
     private static final String GA_ACTION_HAS_WIFI = "has_wifi";
@@ -58,16 +86,40 @@ public class HardwareCollectorService extends IntentService {
     private static final String GA_ACTION_HAS_SENSORS = "has_sensors";
     private static final String GA_LABEL_HAS_BATTERY = "battery";
     private static final String GA_LABEL_NO_BATTERY = "no_battery";
+    private static final String GA_CATEGORY_KERNEL_ERRORS = "system:kernel_errors";
 
     private static final String LAST_INFO_FILE_NAME = "lastInfo.json";
     private static final String CPU_INFO_FILE = "/proc/cpuinfo";
-    private static final String CPU_INFO_MODEL_NAME_PRE = "model name\t: ";
+    private static final String CPU_INFO_MODEL_NAME = "model name";
+    private static final String CPU_INFO_PROCESSOR = "processor";
+    private static final String CPU_INFO_PHYSICAL_ID = "physical id";
+    private static final String CPU_INFO_CORE_ID = "core id";
+    private static final String CPU_INFO_FLAGS = "flags";
+    private static final String CPU_INFO_CACHE_SIZE = "cache size";
+    // flags worth knowing to size workloads, reported in this order
+    private static final String[] CPU_ISA_FLAGS = {
+            "sse4_1", "sse4_2", "avx", "avx2", "avx512f",
+    };
+    private static final String CPU_SYS_DIR = "/sys/devices/system/cpu/cpu";
+    private static final String MEM_INFO_FILE = "/proc/meminfo";
+    private static final String MEM_INFO_MEM_TOTAL = "MemTotal";
+    private static final String LIST_SEPARATOR = ",";
+    private static final long KB_IN_MB = 1024;
+    private static final long BYTES_IN_GB = 1000 * 1000 * 1000;
     private static final String ETHERNET_SYS_FILE = "/sys/class/net/eth0/device/driver/module";
+    private static final String NET_SYS_DIR = "/sys/class/net";
+    private static final String NET_WIRELESS_DIR = "phy80211";
+    private static final String NET_DRIVER_MODULE = "device/driver/module";
     private static final int TOUCHSCREEN_SOURCE_BIT = 4098;
+    private static final String TOUCH_SCREEN_NAME_SEPARATOR = ", ";
+
+    // EGL initialization may take hundreds of ms, or hang in a broken driver
+    private static final long GPU_PROBE_TIMEOUT_MILLIS = 5000;
+    private static final long PROBE_TIMEOUT_MILLIS = 2000;
 
     private Context mContext;
-    private File mInfoFile;
-    private JSONObject mInfoJson;
+    private AtomicFile mInfoFile;
+    private KernelLogScanner mKernelLogScanner;
 
     public HardwareCollectorService() {
         super("HardwareCollectorService");
@@ -77,7 +129,9 @@ public class HardwareCollectorService extends IntentService {
     public void onCreate() {
         super.onCreate();
         mContext = getBaseContext();
-        mInfoFile = new File(getApplicationContext().getFilesDir(), LAST_INFO_FILE_NAME);
+        mInfoFile = new AtomicFile(
+                new File(getApplicationContext().getFilesDir(), LAST_INFO_FILE_NAME));
+        mKernelLogScanner = KernelLogScanner.getInstance(this);
     }
 
     @Override
@@ -86,27 +140,187 @@ public class HardwareCollectorService extends IntentService {
         Log.i(TAG, "handle intent:" + intent);
         if (Intent.ACTION_BOOT_COMPLETED.equals(action)) {
             uploadHardwareInfo();
+            uploadKernelErrors();
+        } else if (ACTION_UPDATE_PROBES.equals(action)) {
+            String[] names = intent.getStringArrayExtra(EXTRA_PROBES);
+            if (names != null) {
+                updateHardwareInfo(Arrays.asList(names));
+            }
+            // hotplug may come with driver errors
+            uploadKernelErrors();
         }
     }
 
     private void uploadHardwareInfo() {
-        getLastInfo();
-        collectOpenGLInfo();
-        collectCPUInfo();
-        collectTouchScreenInfo();
-        collectBatteryInfo();
-        collectNetworkInfo();
-        collectSensorsInfo();
+        HardwareInventory last = HardwareInventory.load(mInfoFile);
+        HardwareInventory inventory = new HardwareInventory(
+                SystemProperties.get("ro.build.fingerprint", ""));
+
+        // cheap probes first, expensive ones are skipped if nothing changed
+        List<HardwareProbe> cheapProbes = new ArrayList<HardwareProbe>();
+        List<HardwareProbe> expensiveProbes = new ArrayList<HardwareProbe>();
+        for (HardwareProbe probe : createProbes()) {
+            (probe.isExpensive() ? expensiveProbes : cheapProbes).add(probe);
+        }
+        collectInventory(cheapProbes, last, inventory);
+        boolean unchanged = inventory.getFingerprint().equals(last.getFingerprint());
+        for (HardwareProbe probe : cheapProbes) {
+            unchanged &= inventory.getValues(probe.getName())
+                    .equals(last.getValues(probe.getName()));
+        }
+        if (unchanged) {
+            for (HardwareProbe probe : expensiveProbes) {
+                if (last.hasProbe(probe.getName())) {
+                    inventory.putValues(probe.getName(), last.getValues(probe.getName()));
+                } else {
+                    unchanged = false;
+                }
+            }
+        }
+        if (!unchanged) {
+            collectInventory(expensiveProbes, last, inventory);
+        }
+        sendAndSaveIfChanged(inventory, last);
+    }
+
+    /**
+     * Re-runs named probes only, keeping values of others.
+     */
+    private void updateHardwareInfo(Collection<String> names) {
+        HardwareInventory last = HardwareInventory.load(mInfoFile);
+        if (last.isEmpty()) {
+            // nothing to patch before the first collection
+            return;
+        }
+        List<HardwareProbe> probes = new ArrayList<HardwareProbe>();
+        for (HardwareProbe probe : createProbes()) {
+            if (names.contains(probe.getName())) {
+                probes.add(probe);
+            }
+        }
+        HardwareInventory inventory = new HardwareInventory(last);
+        collectInventory(probes, last, inventory);
+        sendAndSaveIfChanged(inventory, last);
+    }
+
+    private void sendAndSaveIfChanged(HardwareInventory inventory, HardwareInventory last) {
+        if (inventory.getHash().equals(last.getHash())) {
+            Log.i(TAG, "inventory unchanged");
+            return;
+        }
+        sendInventory(inventory, last);
+        inventory.save(mInfoFile);
+    }
+
+    /**
+     * Sends inventory as one general log, with a change flag per field.
+     */
+    private void sendInventory(HardwareInventory inventory, HardwareInventory last) {
+        Map<String, String> lastValues = last.getAllValues();
+        GeneralLogs logs = new GeneralLogs().setCategory(GA_CATEGORY);
+        for (Map.Entry<String, String> e : inventory.getAllValues().entrySet()) {
+            logs.set(e.getKey(), e.getValue(), !e.getValue().equals(lastValues.get(e.getKey())));
+        }
+        AnalyticsHelper.uploadLogToLogServer(mContext, logs);
+    }
+
+    /**
+     * Sends counts of driver and firmware errors logged by kernel since last scan.
+     */
+    private void uploadKernelErrors() {
+        Map<String, Integer> counts = mKernelLogScanner.scan();
+        if (counts.isEmpty()) {
+            return;
+        }
+        GeneralLogs logs = new GeneralLogs().setCategory(GA_CATEGORY_KERNEL_ERRORS);
+        for (Map.Entry<String, Integer> e : counts.entrySet()) {
+            logs.set(e.getKey(), String.valueOf(e.getValue()));
+        }
+        AnalyticsHelper.uploadLogToLogServer(mContext, logs);
+    }
+
+    private List<HardwareProbe> createProbes() {
+        List<HardwareProbe> probes = new ArrayList<HardwareProbe>();
+        probes.add(new HardwareProbe(PROBE_GPU, GPU_PROBE_TIMEOUT_MILLIS, true) {
+            @Override
+            void collect(Map<String, String> values) {
+                collectOpenGLInfo(values);
+            }
+        });
+        probes.add(new HardwareProbe(PROBE_CPU, PROBE_TIMEOUT_MILLIS) {
+            @Override
+            void collect(Map<String, String> values) throws IOException {
+                collectCPUInfo(values);
+            }
+        });
+        probes.add(new HardwareProbe(PROBE_MEMORY, PROBE_TIMEOUT_MILLIS) {
+            @Override
+            void collect(Map<String, String> values) throws IOException {
+                collectMemoryInfo(values);
+            }
+        });
+        probes.add(new HardwareProbe(PROBE_STORAGE, PROBE_TIMEOUT_MILLIS) {
+            @Override
+            void collect(Map<String, String> values) {
+                collectStorageInfo(values);
+            }
+        });
+        probes.add(new HardwareProbe(PROBE_TOUCH_SCREEN, PROBE_TIMEOUT_MILLIS) {
+            @Override
+            void collect(Map<String, String> values) {
+                collectTouchScreenInfo(values);
+            }
+        });
+        probes.add(new HardwareProbe(PROBE_BATTERY, PROBE_TIMEOUT_MILLIS) {
+            @Override
+            void collect(Map<String, String> values) {
+                collectBatteryInfo(values);
+            }
+        });
+        probes.add(new HardwareProbe(PROBE_NETWORK, PROBE_TIMEOUT_MILLIS) {
+            @Override
+            void collect(Map<String, String> values) {
+                collectNetworkInfo(values);
+            }
+        });
+        probes.add(new HardwareProbe(PROBE_SENSORS, PROBE_TIMEOUT_MILLIS) {
+            @Override
+            void collect(Map<String, String> values) {
+                collectSensorsInfo(values);
+            }
+        });
+        return probes;
     }
 
-    private void collectOpenGLInfo() {
+    /**
+     * Runs probes in parallel and joins their values into inventory. Last values are kept for
+     * probes which fail, not to report a device as removed.
+     */
+    private static void collectInventory(List<HardwareProbe> probes,
+            HardwareInventory last, HardwareInventory inventory) {
+        for (ProbeResult result : ProbeRunner.run(probes)) {
+            if (result.isSuccessful()) {
+                Log.i(TAG, result.toString());
+                inventory.putValues(result.getName(), result.getValues());
+            } else {
+                Log.w(TAG, result.toString(), result.getFailure());
+                if (last.hasProbe(result.getName())) {
+                    inventory.putValues(result.getName(), last.getValues(result.getName()));
+                }
+            }
+        }
+    }
+
+    private void collectOpenGLInfo(Map<String, String> values) {
+        EGL10 egl = null;
+        EGLDisplay eglDisplay = null;
+        EGLSurface eglSurface = null;
+        EGLContext eglContext = null;
         try {
-            EGL10 egl = (EGL10) EGLContext.getEGL();
-            EGLSurface eglSurface = null;
-            EGLContext eglContext = null;
+            egl = (EGL10) EGLContext.getEGL();
 
             // initialize display
-            EGLDisplay eglDisplay = egl.eglGetDisplay(EGL10.EGL_DEFAULT_DISPLAY);
+            eglDisplay = egl.eglGetDisplay(EGL10.EGL_DEFAULT_DISPLAY);
             int[] iparam = new int[2];
             egl.eglInitialize(eglDisplay, iparam);
 
@@ -129,148 +343,226 @@ public class HardwareCollectorService extends IntentService {
                 }
             }
 
-            checkAndSend(GA_ACTION_GPU_RENDERER, GLES20.glGetString(GLES20.GL_RENDERER));
-        } catch (Exception e) {
-            Log.e(TAG, "fail to get GPU renderer", e);
+            String renderer = GLES20.glGetString(GLES20.GL_RENDERER);
+            if (renderer != null) {
+                values.put(GA_ACTION_GPU_RENDERER, renderer);
+            }
+        } finally {
+            // probe threads are reused, do not leave the context current
+            if (eglDisplay != null) {
+                egl.eglMakeCurrent(eglDisplay, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE,
+                        EGL10.EGL_NO_CONTEXT);
+                if (eglContext != null && eglContext != EGL10.EGL_NO_CONTEXT) {
+                    egl.eglDestroyContext(eglDisplay, eglContext);
+                }
+                if (eglSurface != null && eglSurface != EGL10.EGL_NO_SURFACE) {
+                    egl.eglDestroySurface(eglDisplay, eglSurface);
+                }
+            }
         }
     }
 
-    private void collectCPUInfo() {
-        try {
-            BufferedReader reader = new BufferedReader(new FileReader(CPU_INFO_FILE));
-            String cpuInfo;
-            String model = null;
-            while ((cpuInfo = reader.readLine()) != null) {
-                if (cpuInfo.contains(CPU_INFO_MODEL_NAME_PRE)) {
-                    model = cpuInfo.substring(CPU_INFO_MODEL_NAME_PRE.length());
-                    checkAndSend(GA_ACTION_CPU_MODEL, model);
-                    break;
+    private void collectCPUInfo(Map<String, String> values) throws IOException {
+        ProcFileReader reader = new ProcFileReader();
+        reader.read(CPU_INFO_FILE);
+        String model = null;
+        String cacheSize = null;
+        boolean[] isaFlags = null;
+        int threads = 0;
+        long physicalId = 0;
+        HashSet<Long> cores = new HashSet<Long>();
+        while (reader.nextLine()) {
+            if (!reader.nextField(':')) {
+                continue;
+            }
+            if (reader.tokenEquals(CPU_INFO_PROCESSOR)) {
+                threads++;
+                physicalId = 0;
+            } else if (reader.tokenEquals(CPU_INFO_PHYSICAL_ID)) {
+                physicalId = reader.nextLong(0);
+            } else if (reader.tokenEquals(CPU_INFO_CORE_ID)) {
+                cores.add((physicalId << 32) | reader.nextLong(0));
+            } else if (model == null && reader.tokenEquals(CPU_INFO_MODEL_NAME)) {
+                model = reader.restOfLine();
+            } else if (cacheSize == null && reader.tokenEquals(CPU_INFO_CACHE_SIZE)) {
+                cacheSize = reader.restOfLine();
+            } else if (isaFlags == null && reader.tokenEquals(CPU_INFO_FLAGS)) {
+                isaFlags = new boolean[CPU_ISA_FLAGS.length];
+                while (reader.nextToken()) {
+                    for (int i = 0; i < CPU_ISA_FLAGS.length; i++) {
+                        if (reader.tokenEquals(CPU_ISA_FLAGS[i])) {
+                            isaFlags[i] = true;
+                        }
+                    }
                 }
             }
-            reader.close();
-        } catch (Exception e) {
-            Log.e(TAG, "fail to get CPU model name", e);
         }
-    }
 
-    private void collectTouchScreenInfo() {
-        int[] ids = InputManager.getInstance().getInputDeviceIds();
-        for (int id : ids) {
-            InputDevice device = InputManager.getInstance().getInputDevice(id);
-            String name = device.getName();
-            if ((device.getSources() & TOUCHSCREEN_SOURCE_BIT) == TOUCHSCREEN_SOURCE_BIT) {
-                checkAndSend(GA_ACTION_TOUCH_SCREEN_NAME, name);
-                break;
+        if (model != null) {
+            values.put(GA_ACTION_CPU_MODEL, model);
+        }
+        if (threads > 0) {
+            values.put(GA_ACTION_CPU_THREADS, String.valueOf(threads));
+            // no topology in cpuinfo of some virtual machines
+            values.put(GA_ACTION_CPU_CORES,
+                    String.valueOf(cores.isEmpty() ? threads : cores.size()));
+        }
+        if (isaFlags != null) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < CPU_ISA_FLAGS.length; i++) {
+                if (isaFlags[i]) {
+                    sb.append(sb.length() > 0 ? LIST_SEPARATOR : "").append(CPU_ISA_FLAGS[i]);
+                }
             }
+            values.put(GA_ACTION_CPU_ISA_FLAGS, sb.toString());
+        }
+        String cache = getCacheSizes(reader);
+        if (cache.isEmpty() && cacheSize != null) {
+            cache = cacheSize;
+        }
+        if (!cache.isEmpty()) {
+            values.put(GA_ACTION_CPU_CACHE, cache);
         }
-    }
 
-    private void collectBatteryInfo() {
-        IntentFilter filter = new IntentFilter();
-        filter.addAction(Intent.ACTION_BATTERY_CHANGED);
-        Intent batteryIntent = mContext.registerReceiver(null, filter);
-        String label = batteryIntent.getBooleanExtra("present", false) ?
-                GA_LABEL_HAS_BATTERY : GA_LABEL_NO_BATTERY;
-        AnalyticsHelper.CustomEvent customEvent = AnalyticsHelper.newSystemCoreEvent(
-                                    mContext, GA_CATEGORY, GA_ACTION_HAS_BATTERY);
-        customEvent.setLabel(label);
-        customEvent.sendWithSampling();
+        long maxFreqKhz = 0;
+        for (int i = 0; i < Math.max(threads, 1); i++) {
+            maxFreqKhz = Math.max(maxFreqKhz, reader.readLong(
+                    CPU_SYS_DIR + i + "/cpufreq/cpuinfo_max_freq", 0));
+        }
+        if (maxFreqKhz > 0) {
+            values.put(GA_ACTION_CPU_MAX_FREQ_MHZ, String.valueOf(maxFreqKhz / 1000));
+        }
     }
 
-    private void collectNetworkInfo() {
-        String wlan = SystemProperties.get("wlan.modname", "");
-        if (!wlan.isEmpty()) {
-            checkAndSend(GA_ACTION_HAS_WIFI, wlan);
+    /**
+     * Gets cache sizes of cpu0 from sysfs, e.g. "L1d:32K,L1i:32K,L2:256K,L3:6144K".
+     */
+    private static String getCacheSizes(ProcFileReader reader) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; ; i++) {
+            String dir = CPU_SYS_DIR + "0/cache/index" + i;
+            String size = readFirstToken(reader, dir + "/size");
+            if (size == null) {
+                break;
+            }
+            String type = readFirstToken(reader, dir + "/type");
+            sb.append(sb.length() > 0 ? LIST_SEPARATOR : "")
+                    .append('L').append(reader.readLong(dir + "/level", 0));
+            if ("Data".equals(type)) {
+                sb.append('d');
+            } else if ("Instruction".equals(type)) {
+                sb.append('i');
+            }
+            sb.append(':').append(size);
         }
+        return sb.toString();
+    }
 
+    private static String readFirstToken(ProcFileReader reader, String path) {
         try {
-            File mod = new File(Os.readlink(ETHERNET_SYS_FILE));
-            checkAndSend(GA_ACTION_HAS_ETHERNET, mod.getName());
-        } catch (Exception e) {
-            Log.d(TAG, "eth0 not found", e);
+            reader.read(path);
+        } catch (IOException e) {
+            return null;
         }
+        return reader.nextLine() && reader.nextToken() ? reader.tokenAsString() : null;
     }
 
-    private void collectSensorsInfo() {
-        String sensors = SystemProperties.get("ro.hardware.sensors", "");
-        if (!sensors.isEmpty() && !"kbd".equals(sensors)) {
-            checkAndSend(GA_ACTION_HAS_SENSORS, sensors);
+    private void collectMemoryInfo(Map<String, String> values) throws IOException {
+        ProcFileReader reader = new ProcFileReader();
+        reader.read(MEM_INFO_FILE);
+        while (reader.nextLine()) {
+            if (reader.nextField(':') && reader.tokenEquals(MEM_INFO_MEM_TOTAL)) {
+                values.put(GA_ACTION_MEM_TOTAL_MB, String.valueOf(reader.nextLong(0) / KB_IN_MB));
+                break;
+            }
         }
     }
 
-    private void getLastInfo() {
-        try {
-            if (mInfoFile.exists()) {
-                String fileString = readFileAsString(mInfoFile.getPath());
-                mInfoJson = new JSONObject(fileString);
-            } else {
-                mInfoJson = new JSONObject();
+    /**
+     * Collects built-in storage, e.g. "mmcblk0:emmc:32GB,sda:ssd:128GB". Removable devices
+     * are left out, not to change the inventory on every plug.
+     */
+    private void collectStorageInfo(Map<String, String> values) {
+        StringBuilder sb = new StringBuilder();
+        for (BlockDevice device : BlockDevice.list()) {
+            if (device.isRemovable() || device.getSizeBytes() == 0) {
+                continue;
             }
-        } catch (Exception e) {
-            Log.e(TAG, "fail to get last info file", e);
+            sb.append(sb.length() > 0 ? LIST_SEPARATOR : "")
+                    .append(device.getName()).append(':')
+                    .append(device.getType()).append(':')
+                    .append(Math.round((double) device.getSizeBytes() / BYTES_IN_GB)).append("GB");
+        }
+        if (sb.length() > 0) {
+            values.put(GA_ACTION_STORAGE, sb.toString());
         }
     }
 
-    private boolean isDifferentInfo(String key, String value) {
-        try {
-            if (mInfoJson.has(key)) {
-                String lastValue = mInfoJson.getString(key);
-                return lastValue == null || !lastValue.equals(value);
+    /**
+     * Collects names of all touch screens, sorted so the value is stable.
+     */
+    private void collectTouchScreenInfo(Map<String, String> values) {
+        TreeSet<String> names = new TreeSet<String>();
+        int[] ids = InputManager.getInstance().getInputDeviceIds();
+        for (int id : ids) {
+            InputDevice device = InputManager.getInstance().getInputDevice(id);
+            if (device != null
+                    && (device.getSources() & TOUCHSCREEN_SOURCE_BIT) == TOUCHSCREEN_SOURCE_BIT) {
+                names.add(device.getName());
             }
-        } catch (Exception e) {
-            Log.e(TAG, "check info failed", e);
         }
-        return true;
-    }
-
-    private void checkAndSend(String key, String value) {
-        if (isDifferentInfo(key, value)) {
-            sendToGA(key, value);
-            saveInfo(key, value);
+        if (!names.isEmpty()) {
+            values.put(GA_ACTION_TOUCH_SCREEN_NAME,
+                    TextUtils.join(TOUCH_SCREEN_NAME_SEPARATOR, names));
         }
     }
 
-    private void sendToGA(String action, String label) {
-        AnalyticsHelper.CustomEvent customEvent =
-                AnalyticsHelper.newSystemCoreEvent(mContext, GA_CATEGORY, action);
-        customEvent.setLabel(label);
-        customEvent.sendWithoutSampling();
+    private void collectBatteryInfo(Map<String, String> values) {
+        BatteryState state = BatteryState.of(mContext);
+        values.put(GA_ACTION_HAS_BATTERY, state != null && state.isPresent() ?
+                GA_LABEL_HAS_BATTERY : GA_LABEL_NO_BATTERY);
     }
 
-    private void sendToAnalytics(String key, String value) {
-        GeneralLogs logs = new GeneralLogs();
-        logs.set(key, value);
-        AnalyticsHelper.uploadLogToLogServer(mContext, logs);
-    }
+    private void collectNetworkInfo(Map<String, String> values) {
+        // wlan.modname is set once at boot, hot-plugged dongles show only as interfaces
+        TreeSet<String> wlan = new TreeSet<String>();
+        String[] interfaces = new File(NET_SYS_DIR).list();
+        if (interfaces != null) {
+            for (String name : interfaces) {
+                File dir = new File(NET_SYS_DIR, name);
+                if (!new File(dir, NET_WIRELESS_DIR).exists()) {
+                    continue;
+                }
+                try {
+                    wlan.add(new File(Os.readlink(
+                            new File(dir, NET_DRIVER_MODULE).getPath())).getName());
+                } catch (Exception e) {
+                    Log.d(TAG, "no driver module of " + name, e);
+                }
+            }
+        }
+        if (wlan.isEmpty()) {
+            String modname = SystemProperties.get("wlan.modname", "");
+            if (!modname.isEmpty()) {
+                wlan.add(modname);
+            }
+        }
+        if (!wlan.isEmpty()) {
+            values.put(GA_ACTION_HAS_WIFI, TextUtils.join(LIST_SEPARATOR, wlan));
+        }
 
-    private void saveInfo(String key, String value) {
         try {
-            mInfoJson.put(key, value);
-            writeStringToFile(mInfoFile.getPath(), mInfoJson.toString());
+            File mod = new File(Os.readlink(ETHERNET_SYS_FILE));
+            values.put(GA_ACTION_HAS_ETHERNET, mod.getName());
         } catch (Exception e) {
-            Log.e(TAG, "write info file failed", e);
+            Log.d(TAG, "eth0 not found", e);
         }
     }
 
-    public static void writeStringToFile(String filePath, String sets) throws IOException {
-        FileWriter fileWriter = new FileWriter(filePath);
-        PrintWriter out = new PrintWriter(fileWriter);
-        out.write(sets);
-        out.println();
-        fileWriter.close();
-        out.close();
-    }
-
-    private static String readFileAsString(String filePath) throws IOException {
-        StringBuffer fileData = new StringBuffer();
-        BufferedReader reader = new BufferedReader(new FileReader(filePath));
-        char[] buf = new char[1024];
-        int count = 0;
-        while ((count = reader.read(buf)) != -1) {
-            String readData = String.valueOf(buf, 0, count);
-            fileData.append(readData);
-        }
-        reader.close();
-        return fileData.toString();
+    private void collectSensorsInfo(Map<String, String> values) {
+        String sensors = SystemProperties.get("ro.hardware.sensors", "");
+        if (!sensors.isEmpty() && !"kbd".equals(sensors)) {
+            values.put(GA_ACTION_HAS_SENSORS, sensors);
+        }
     }
 }
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.hardwarecollector;
+
+import android.util.AtomicFile;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Snapshot of hardware inventory: values of each probe, and the build fingerprint they are
+ * collected with.
+ *
+ * Saved as one JSON file written atomically, together with a hash of the content, so an
+ * unchanged inventory is detected without comparing values one by one.
+ */
+class HardwareInventory {
+    private static final String TAG = "HardwareInventory";
+
+    private static final String KEY_HASH = "hash";
+    private static final String KEY_FINGERPRINT = "fingerprint";
+    private static final String KEY_PROBES = "probes";
+
+    private final String mFingerprint;
+    // values by probe name, both sorted for a stable hash
+    private final TreeMap<String, Map<String, String>> mProbes =
+            new TreeMap<String, Map<String, String>>();
+    private String mHash;
+
+    HardwareInventory(String fingerprint) {
+        mFingerprint = fingerprint;
+    }
+
+    /**
+     * Creates a copy of other inventory to patch.
+     */
+    HardwareInventory(HardwareInventory other) {
+        mFingerprint = other.mFingerprint;
+        mProbes.putAll(other.mProbes);
+        mHash = other.mHash;
+    }
+
+    String getFingerprint() {
+        return mFingerprint;
+    }
+
+    /**
+     * Whether no probe is collected, e.g. before the first collection.
+     */
+    boolean isEmpty() {
+        return mProbes.isEmpty();
+    }
+
+    boolean hasProbe(String probe) {
+        return mProbes.containsKey(probe);
+    }
+
+    /**
+     * Gets values of probe, empty if not collected.
+     */
+    Map<String, String> getValues(String probe) {
+        Map<String, String> values = mProbes.get(probe);
+        return values != null ? values : Collections.<String, String>emptyMap();
+    }
+
+    void putValues(String probe, Map<String, String> values) {
+        mProbes.put(probe, Collections.unmodifiableMap(new TreeMap<String, String>(values)));
+        mHash = null;
+    }
+
+    /**
+     * Gets values of all probes.
+     */
+    Map<String, String> getAllValues() {
+        TreeMap<String, String> all = new TreeMap<String, String>();
+        for (Map<String, String> values : mProbes.values()) {
+            all.putAll(values);
+        }
+        return all;
+    }
+
+    /**
+     * Gets SHA-1 of fingerprint and values in hex.
+     */
+    String getHash() {
+        if (mHash == null) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-1");
+                update(digest, mFingerprint);
+                for (Map.Entry<String, Map<String, String>> probe : mProbes.entrySet()) {
+                    update(digest, probe.getKey());
+                    for (Map.Entry<String, String> e : probe.getValue().entrySet()) {
+                        update(digest, e.getKey());
+                        update(digest, e.getValue());
+                    }
+                }
+                StringBuilder sb = new StringBuilder();
+                for (byte b : digest.digest()) {
+                    sb.append(String.format("%02x", b));
+                }
+                mHash = sb.toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return mHash;
+    }
+
+    private static void update(MessageDigest digest, String s) {
+        digest.update(s.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Loads saved inventory, or an empty one if none or invalid.
+     */
+    static HardwareInventory load(AtomicFile file) {
+        try {
+            JSONObject json = new JSONObject(
+                    new String(file.readFully(), StandardCharsets.UTF_8));
+            HardwareInventory inventory = new HardwareInventory(json.optString(KEY_FINGERPRINT));
+            JSONObject probes = json.optJSONObject(KEY_PROBES);
+            if (probes == null) {
+                // flat values saved by older versions, only good to compare values
+                probes = new JSONObject();
+                probes.put("", json);
+            }
+            Iterator<String> names = probes.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                JSONObject values = probes.getJSONObject(name);
+                TreeMap<String, String> map = new TreeMap<String, String>();
+                Iterator<String> keys = values.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    map.put(key, values.getString(key));
+                }
+                inventory.putValues(name, map);
+            }
+            inventory.mHash = json.optString(KEY_HASH, null);
+            return inventory;
+        } catch (FileNotFoundException e) {
+            // first run
+        } catch (IOException e) {
+            Log.w(TAG, "fail to load inventory", e);
+        } catch (JSONException e) {
+            Log.w(TAG, "fail to load inventory", e);
+        }
+        return new HardwareInventory("");
+    }
+
+    void save(AtomicFile file) {
+        FileOutputStream out = null;
+        try {
+            JSONObject probes = new JSONObject();
+            for (Map.Entry<String, Map<String, String>> e : mProbes.entrySet()) {
+                probes.put(e.getKey(), new JSONObject(e.getValue()));
+            }
+            JSONObject json = new JSONObject();
+            json.put(KEY_HASH, getHash());
+            json.put(KEY_FINGERPRINT, mFingerprint);
+            json.put(KEY_PROBES, probes);
+
+            out = file.startWrite();
+            out.write(json.toString().getBytes(StandardCharsets.UTF_8));
+            file.finishWrite(out);
+        } catch (IOException e) {
+            Log.e(TAG, "fail to save inventory", e);
+            if (out != null) {
+                file.failWrite(out);
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "fail to save inventory", e);
+        }
+    }
+}
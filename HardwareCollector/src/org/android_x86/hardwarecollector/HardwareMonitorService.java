@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.hardwarecollector;
+
+import android.app.Service;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.hardware.input.InputManager;
+import android.hardware.usb.UsbManager;
+import android.net.ConnectivityManager;
+import android.os.Handler;
+import android.os.IBinder;
+import android.util.Log;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Watches hot-plugged hardware and asks HardwareCollectorService to re-run affected probes.
+ *
+ * Input devices are watched by InputDeviceListener, USB devices and network interfaces by
+ * broadcasts. Events are debounced, since one device usually comes with a burst of them.
+ */
+public class HardwareMonitorService extends Service {
+    private static final String TAG = "HardwareMonitorService";
+
+    private static final long DEBOUNCE_MILLIS = 3000;
+
+    private final Handler mHandler = new Handler();
+    private final Set<String> mPendingProbes = new HashSet<String>();
+    private InputManager mInputManager;
+
+    private final Runnable mUpdateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Intent intent = new Intent(HardwareMonitorService.this,
+                    HardwareCollectorService.class);
+            intent.setAction(HardwareCollectorService.ACTION_UPDATE_PROBES);
+            intent.putExtra(HardwareCollectorService.EXTRA_PROBES,
+                    mPendingProbes.toArray(new String[mPendingProbes.size()]));
+            mPendingProbes.clear();
+            startService(intent);
+        }
+    };
+
+    private final InputManager.InputDeviceListener mInputDeviceListener =
+            new InputManager.InputDeviceListener() {
+        @Override
+        public void onInputDeviceAdded(int deviceId) {
+            scheduleUpdate(HardwareCollectorService.PROBE_TOUCH_SCREEN);
+        }
+
+        @Override
+        public void onInputDeviceRemoved(int deviceId) {
+            scheduleUpdate(HardwareCollectorService.PROBE_TOUCH_SCREEN);
+        }
+
+        @Override
+        public void onInputDeviceChanged(int deviceId) {
+            // sources of a device do not change
+        }
+    };
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            // connectivity changed, or a USB device which may be a Wi-Fi dongle is attached or
+            // detached, sensors are fixed at boot
+            scheduleUpdate(HardwareCollectorService.PROBE_NETWORK);
+        }
+    };
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mInputManager = (InputManager) getSystemService(Context.INPUT_SERVICE);
+        mInputManager.registerInputDeviceListener(mInputDeviceListener, mHandler);
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
+        filter.addAction(UsbManager.ACTION_USB_DEVICE_ATTACHED);
+        filter.addAction(UsbManager.ACTION_USB_DEVICE_DETACHED);
+        registerReceiver(mReceiver, filter);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        return START_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        mInputManager.unregisterInputDeviceListener(mInputDeviceListener);
+        unregisterReceiver(mReceiver);
+        mHandler.removeCallbacks(mUpdateRunnable);
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    private void scheduleUpdate(String probe) {
+        Log.d(TAG, "schedule update of " + probe);
+        mPendingProbes.add(probe);
+        mHandler.removeCallbacks(mUpdateRunnable);
+        mHandler.postDelayed(mUpdateRunnable, DEBOUNCE_MILLIS);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.hardwarecollector;
+
+import java.util.Map;
+
+/**
+ * Probe of one kind of hardware, e.g. GPU or CPU.
+ */
+abstract class HardwareProbe {
+    private final String mName;
+    private final long mTimeoutMillis;
+    private final boolean mExpensive;
+
+    HardwareProbe(String name, long timeoutMillis) {
+        this(name, timeoutMillis, false);
+    }
+
+    /**
+     * @param expensive whether to reuse last values if cheap probes and build are unchanged
+     */
+    HardwareProbe(String name, long timeoutMillis, boolean expensive) {
+        mName = name;
+        mTimeoutMillis = timeoutMillis;
+        mExpensive = expensive;
+    }
+
+    String getName() {
+        return mName;
+    }
+
+    long getTimeoutMillis() {
+        return mTimeoutMillis;
+    }
+
+    boolean isExpensive() {
+        return mExpensive;
+    }
+
+    /**
+     * Collects inventory values, called on a probe thread.
+     */
+    abstract void collect(Map<String, String> values) throws Exception;
+}
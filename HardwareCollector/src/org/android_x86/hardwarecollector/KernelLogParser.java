@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.hardwarecollector;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses /dev/kmsg records and counts driver and firmware errors of the kernel by signature: the
+ * error kind and the message with numbers replaced, e.g. "usb_reset:usb N-N: reset high-speed
+ * USB device number N using xhci_hcd". Messages are matched by one precompiled pattern.
+ *
+ * Not thread safe.
+ */
+class KernelLogParser {
+    private static final int MAX_SIGNATURES = 32;
+    private static final int MAX_MESSAGE_LENGTH = 120;
+    private static final String OTHER_SIGNATURE = "other";
+    private static final int FACILITY_KERNEL = 0;
+
+    // kinds in the order of groups of ERROR_PATTERN
+    private static final String[] KINDS = {"firmware", "gpu_hang", "usb_reset", "acpi"};
+    private static final Pattern ERROR_PATTERN = Pattern.compile(
+            "(firmware: failed to load|Direct firmware load for \\S+ failed)"
+            + "|(GPU HANG|GPU hang|gpu hung|ring \\w+ timeout|GPU lockup)"
+            + "|(reset \\S+ USB device|device descriptor read/\\w+, error"
+            + "|device not accepting address)"
+            + "|(ACPI (?:BIOS )?(?:Error|Exception))");
+    private static final Pattern NUMBER_PATTERN =
+            Pattern.compile("\\b(?:0x)?[0-9a-fA-F]*[0-9][0-9a-fA-F]*\\b");
+
+    private final StringBuilder mMessage = new StringBuilder();
+    private final Matcher mMatcher = ERROR_PATTERN.matcher("");
+    // counts by signature, bounded by MAX_SIGNATURES
+    private final HashMap<String, Integer> mCounts = new HashMap<String, Integer>();
+
+    /**
+     * Gets sequence number of record "priority,seq,timestamp,flags[,...];message\n[dictionary]"
+     * without looking at the message.
+     * @return sequence number, or -1 if malformed
+     */
+    static long parseSeq(byte[] record, int length) {
+        int i = 0;
+        while (i < length && record[i] >= '0' && record[i] <= '9') {
+            i++;
+        }
+        if (i >= length || record[i++] != ',') {
+            return -1;
+        }
+        long seq = 0;
+        int start = i;
+        for (; i < length && record[i] >= '0' && record[i] <= '9'; i++) {
+            seq = seq * 10 + record[i] - '0';
+        }
+        return i > start ? seq : -1;
+    }
+
+    /**
+     * Counts record if it is an error message of the kernel.
+     */
+    void add(byte[] record, int length) {
+        if (parseMessage(record, length)) {
+            match();
+        }
+    }
+
+    /**
+     * Gets counts by signature since last clear.
+     */
+    Map<String, Integer> getCounts() {
+        return mCounts;
+    }
+
+    void clear() {
+        mCounts.clear();
+    }
+
+    /**
+     * Keeps message of the kernel in mMessage.
+     * @return false for malformed records and messages of user space
+     */
+    boolean parseMessage(byte[] record, int length) {
+        mMessage.setLength(0);
+        int i = 0;
+        long priority = 0;
+        for (; i < length && record[i] >= '0' && record[i] <= '9'; i++) {
+            priority = priority * 10 + record[i] - '0';
+        }
+        if (i >= length || record[i] != ',') {
+            return false;
+        }
+        // facility in high bits, level in low 3 bits
+        if (priority >> 3 != FACILITY_KERNEL) {
+            return false;
+        }
+        while (i < length && record[i] != ';') {
+            i++;
+        }
+        // non-printable bytes are escaped as \xNN by the kernel
+        for (i++; i < length && record[i] != '\n'; i++) {
+            mMessage.append((char) (record[i] & 0xff));
+        }
+        return mMessage.length() > 0;
+    }
+
+    /**
+     * Gets message kept by parseMessage().
+     */
+    CharSequence getMessage() {
+        return mMessage;
+    }
+
+    private void match() {
+        mMatcher.reset(mMessage);
+        if (!mMatcher.find()) {
+            return;
+        }
+        int group = 1;
+        while (mMatcher.group(group) == null) {
+            group++;
+        }
+        String signature = KINDS[group - 1] + ":" + normalize(mMessage);
+        Integer count = mCounts.get(signature);
+        if (count == null && mCounts.size() >= MAX_SIGNATURES - 1) {
+            signature = OTHER_SIGNATURE;
+            count = mCounts.get(signature);
+        }
+        mCounts.put(signature, count != null ? count + 1 : 1);
+    }
+
+    /**
+     * Replaces numbers and hex values with "N", so messages of different devices and addresses
+     * share a signature.
+     */
+    static String normalize(CharSequence message) {
+        String normalized = NUMBER_PATTERN.matcher(message).replaceAll("N");
+        return normalized.length() > MAX_MESSAGE_LENGTH
+                ? normalized.substring(0, MAX_MESSAGE_LENGTH) : normalized;
+    }
+}
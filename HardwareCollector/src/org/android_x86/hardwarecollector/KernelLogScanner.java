@@ -0,0 +1,207 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.hardwarecollector;
+
+import android.content.Context;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import org.android_x86.analytics.ProcFileReader;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Counts driver and firmware errors in the kernel log.
+ *
+ * Reads /dev/kmsg one record per read(), so the ring buffer is never loaded as a whole. The file
+ * stays open for the life of the process, so a scan continues where the previous one stopped.
+ * After the process starts, records up to the sequence number saved by the last scan of the
+ * same boot are skipped by their header, and are not counted toward MAX_RECORDS_PER_SCAN.
+ * Records are parsed and counted by KernelLogParser.
+ */
+class KernelLogScanner {
+    private static final String TAG = "KernelLogScanner";
+
+    private static final String KMSG = "/dev/kmsg";
+    private static final String BOOT_ID_FILE = "/proc/sys/kernel/random/boot_id";
+    private static final String CURSOR_FILE_NAME = "kmsg_cursor";
+
+    // a record is at most 1024 bytes of text plus dictionary
+    private static final int RECORD_BUFFER_SIZE = 8192;
+    private static final int MAX_RECORDS_PER_SCAN = 20000;
+
+    private static KernelLogScanner sInstance;
+
+    private final AtomicFile mCursorFile;
+    private final byte[] mBuffer = new byte[RECORD_BUFFER_SIZE];
+    private final KernelLogParser mParser = new KernelLogParser();
+
+    // open kmsg, null if not opened
+    private FileDescriptor mFd;
+    private String mBootId;
+    // sequence number of the last scanned record, -1 if none
+    private long mLastSeq = -1;
+
+    private KernelLogScanner(AtomicFile cursorFile) {
+        mCursorFile = cursorFile;
+    }
+
+    static synchronized KernelLogScanner getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new KernelLogScanner(new AtomicFile(
+                    new File(context.getApplicationContext().getFilesDir(), CURSOR_FILE_NAME)));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Scans records since last scan.
+     * @return counts by signature, empty if no new errors
+     */
+    synchronized Map<String, Integer> scan() {
+        mParser.clear();
+        if (mFd == null && !open()) {
+            return mParser.getCounts();
+        }
+        long lastSeq = mLastSeq;
+        try {
+            int records = 0;
+            while (records < MAX_RECORDS_PER_SCAN) {
+                int length;
+                try {
+                    length = Os.read(mFd, mBuffer, 0, mBuffer.length);
+                } catch (ErrnoException e) {
+                    if (e.errno == OsConstants.EPIPE) {
+                        // records overwritten before read, continue from the oldest one
+                        continue;
+                    } else if (e.errno != OsConstants.EAGAIN) {
+                        Log.w(TAG, "fail to read " + KMSG, e);
+                        close();
+                    }
+                    break;
+                }
+                if (length <= 0) {
+                    break;
+                }
+                long seq = KernelLogParser.parseSeq(mBuffer, length);
+                if (seq <= mLastSeq) {
+                    // scanned before the process restarted
+                    continue;
+                }
+                mLastSeq = seq;
+                mParser.add(mBuffer, length);
+                records++;
+            }
+        } catch (IOException e) {
+            // InterruptedIOException of read
+            Log.w(TAG, "fail to read " + KMSG, e);
+            close();
+        }
+        if (mLastSeq != lastSeq) {
+            saveCursor(mBootId, mLastSeq);
+        }
+        return mParser.getCounts();
+    }
+
+    /**
+     * Opens kmsg and loads the cursor of current boot.
+     */
+    private boolean open() {
+        mBootId = readBootId();
+        if (mBootId == null) {
+            return false;
+        }
+        // sequence numbers restart at each boot
+        String[] cursor = loadCursor();
+        mLastSeq = cursor != null && mBootId.equals(cursor[0]) ? parseLong(cursor[1]) : -1;
+        try {
+            mFd = Os.open(KMSG, OsConstants.O_RDONLY | OsConstants.O_NONBLOCK, 0);
+        } catch (ErrnoException e) {
+            Log.i(TAG, "cannot open " + KMSG + ": " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    private void close() {
+        try {
+            Os.close(mFd);
+        } catch (ErrnoException e) {
+            // ignore
+        }
+        mFd = null;
+    }
+
+    private static String readBootId() {
+        ProcFileReader reader = new ProcFileReader(64, 64);
+        try {
+            reader.read(BOOT_ID_FILE);
+        } catch (IOException e) {
+            Log.w(TAG, "fail to read boot id", e);
+            return null;
+        }
+        return reader.nextLine() && reader.nextToken() ? reader.tokenAsString() : null;
+    }
+
+    /**
+     * Loads cursor as {boot id, seq}, or null if none.
+     */
+    private String[] loadCursor() {
+        try {
+            String[] cursor = new String(mCursorFile.readFully(), StandardCharsets.US_ASCII)
+                    .trim().split(" ");
+            if (cursor.length == 2) {
+                return cursor;
+            }
+        } catch (FileNotFoundException e) {
+            // first scan
+        } catch (IOException e) {
+            Log.w(TAG, "fail to load cursor", e);
+        }
+        return null;
+    }
+
+    private static long parseLong(String s) {
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void saveCursor(String bootId, long seq) {
+        FileOutputStream out = null;
+        try {
+            out = mCursorFile.startWrite();
+            out.write((bootId + " " + seq).getBytes(StandardCharsets.US_ASCII));
+            mCursorFile.finishWrite(out);
+        } catch (IOException e) {
+            Log.e(TAG, "fail to save cursor", e);
+            if (out != null) {
+                mCursorFile.failWrite(out);
+            }
+        }
+    }
+}
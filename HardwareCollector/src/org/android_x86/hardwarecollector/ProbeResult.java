@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.hardwarecollector;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Result of a hardware probe: the collected values, or why it failed, and how long it took.
+ */
+class ProbeResult {
+    private final String mName;
+    private final Map<String, String> mValues;
+    private final Throwable mFailure;
+    private final boolean mTimedOut;
+    private final long mLatencyMillis;
+
+    private ProbeResult(String name, Map<String, String> values, Throwable failure,
+            boolean timedOut, long latencyMillis) {
+        mName = name;
+        mValues = values;
+        mFailure = failure;
+        mTimedOut = timedOut;
+        mLatencyMillis = latencyMillis;
+    }
+
+    static ProbeResult success(String name, Map<String, String> values, long latencyMillis) {
+        return new ProbeResult(name, Collections.unmodifiableMap(values), null, false,
+                latencyMillis);
+    }
+
+    static ProbeResult failure(String name, Throwable failure, long latencyMillis) {
+        return new ProbeResult(name, Collections.<String, String>emptyMap(), failure, false,
+                latencyMillis);
+    }
+
+    static ProbeResult timeout(String name, long latencyMillis) {
+        return new ProbeResult(name, Collections.<String, String>emptyMap(), null, true,
+                latencyMillis);
+    }
+
+    String getName() {
+        return mName;
+    }
+
+    Map<String, String> getValues() {
+        return mValues;
+    }
+
+    boolean isSuccessful() {
+        return mFailure == null && !mTimedOut;
+    }
+
+    Throwable getFailure() {
+        return mFailure;
+    }
+
+    boolean isTimedOut() {
+        return mTimedOut;
+    }
+
+    long getLatencyMillis() {
+        return mLatencyMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ProbeResult {name: " + mName
+                + " values: " + mValues
+                + " failure: " + mFailure
+                + " timedOut: " + mTimedOut
+                + " latency: " + mLatencyMillis + "ms}";
+    }
+}
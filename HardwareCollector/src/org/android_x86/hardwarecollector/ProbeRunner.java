@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.hardwarecollector;
+
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs hardware probes in parallel, each bounded by its own timeout.
+ *
+ * A probe which times out is interrupted and abandoned, its daemon thread can not block the
+ * process from exiting. So the wall clock time is bounded by the slowest probe timeout rather
+ * than the sum of all probes.
+ */
+class ProbeRunner {
+    private static final int MAX_THREADS = 4;
+
+    private static final ThreadFactory sThreadFactory = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "HardwareProbe");
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private ProbeRunner() {
+    }
+
+    /**
+     * Runs probes and waits for their results, in the same order as probes.
+     */
+    static List<ProbeResult> run(List<HardwareProbe> probes) {
+        List<ProbeResult> results = new ArrayList<ProbeResult>(probes.size());
+        if (probes.isEmpty()) {
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(probes.size(), MAX_THREADS), sThreadFactory);
+        try {
+            long start = SystemClock.elapsedRealtime();
+            List<Future<ProbeResult>> futures = new ArrayList<Future<ProbeResult>>();
+            for (final HardwareProbe probe : probes) {
+                futures.add(executor.submit(new Callable<ProbeResult>() {
+                    @Override
+                    public ProbeResult call() {
+                        long probeStart = SystemClock.elapsedRealtime();
+                        Map<String, String> values = new LinkedHashMap<String, String>();
+                        try {
+                            probe.collect(values);
+                        } catch (Exception e) {
+                            return ProbeResult.failure(probe.getName(), e,
+                                    SystemClock.elapsedRealtime() - probeStart);
+                        }
+                        return ProbeResult.success(probe.getName(), values,
+                                SystemClock.elapsedRealtime() - probeStart);
+                    }
+                }));
+            }
+
+            for (int i = 0; i < probes.size(); i++) {
+                HardwareProbe probe = probes.get(i);
+                Future<ProbeResult> future = futures.get(i);
+                // timeout includes time waiting for a thread
+                long remaining = start + probe.getTimeoutMillis() - SystemClock.elapsedRealtime();
+                ProbeResult result;
+                try {
+                    result = future.get(Math.max(remaining, 0), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                    result = ProbeResult.timeout(probe.getName(),
+                            SystemClock.elapsedRealtime() - start);
+                } catch (ExecutionException e) {
+                    result = ProbeResult.failure(probe.getName(), e.getCause(),
+                            SystemClock.elapsedRealtime() - start);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    future.cancel(true);
+                    result = ProbeResult.failure(probe.getName(), e,
+                            SystemClock.elapsedRealtime() - start);
+                }
+                results.add(result);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+}
@@ -25,6 +25,8 @@ import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.os.BadParcelableException;
 import android.os.Bundle;
+import android.os.DropBoxManager;
+import android.os.IBinder;
 import android.os.SystemClock;
 import android.os.SystemProperties;
 import android.util.Log;
@@ -32,7 +34,11 @@ import org.android_x86.analytics.AnalyticsHelper;
 import org.android_x86.analytics.GeneralLogs;
 import org.android_x86.analytics.ImmortalIntentService;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
 
 public class AnalyticsService extends ImmortalIntentService {
     private static final String TAG = "AnalyticsService";
@@ -41,13 +47,26 @@ public class AnalyticsService extends ImmortalIntentService {
     public static final String sSharedPreferencesKey = "org.android_x86.analytics.prefs";
 
     private static final int MS_IN_SECOND = 1000;
+    private static final long MS_IN_DAY = 24 * 60 * 60 * 1000;
     // ga event
     private static final String EVENT_CATEGORY_POWER = "power";
+    private static final String EVENT_CATEGORY_GENERAL = "general";
 
     private static final String EVENT_BOOT_COMPLETED = "boot_completed";
     private static final String EVENT_SHUTDOWN = "shutdown";
     private static final String EVENT_SCREEN_ON = "screen_on";
     private static final String EVENT_SCREEN_OFF = "screen_off";
+    // histogram keys
+    private static final String HISTOGRAM_SCREEN_ON_SECONDS = "power/screen_on_seconds";
+    private static final String HISTOGRAM_SCREEN_OFF_SECONDS = "power/screen_off_seconds";
+    private static final String HISTOGRAM_UPTIME_SECONDS = "power/uptime_seconds";
+    private static final String HISTOGRAM_AWAKE_SECONDS = "power/awake_seconds";
+    // self-sent action to handle battery changes on worker thread
+    private static final String ACTION_BATTERY_CHANGED =
+            "org.android_x86.analytics.battery_changed";
+    // self-sent action to collect new DropBox entries on worker thread
+    private static final String ACTION_DROPBOX_ENTRY_ADDED =
+            "org.android_x86.analytics.dropbox_entry_added";
     // SharedPreferences_KEY
     private static final String SHARED_PREFS_KEY_SCREEN_CHANGE_TIME = "screen_change_time";
     private static final String SHARED_PREFS_KEY_LATEST_SEND_TIME = "latest_send_time";
@@ -57,15 +76,73 @@ public class AnalyticsService extends ImmortalIntentService {
     private boolean mEnable;
     private SharedPreferences mSharedPrefs;
     private BroadcastReceiver mReceiver;
+    private BroadcastReceiver mPackageReceiver;
 
     private final HashMap<String, EventHandler> mStaticEventHandlers =
             new HashMap<String, EventHandler>();
 
     private LogHelper mLogHelper;
+    private AppLabelCache mAppLabelCache;
+    private final ForegroundTracker mForegroundTracker = new ForegroundTracker();
+    private final UsageSessionEngine mUsageSessionEngine = new UsageSessionEngine();
+    private final ScreenTransitionGraph mScreenTransitionGraph = new ScreenTransitionGraph();
+    private final HeavyHitters mHeavyHitters = new HeavyHitters();
+    private final DistinctCounters mDistinctCounters = new DistinctCounters();
+    private final HistogramStore mHistogramStore = new HistogramStore();
+    private final AppDrainAttribution mAppDrainAttribution = new AppDrainAttribution();
+    private final WakeupStats mWakeupStats = new WakeupStats();
+    private final PressureStats mPressureStats = new PressureStats(mHistogramStore);
+    private PowerStats mPowerStats;
+    private SystemSampler mSystemSampler;
+    private ThermalStats mThermalStats;
+    private AppTrafficStats mAppTrafficStats;
+    private DropBoxCollector mDropBoxCollector;
+    // when onCreate finishes, to measure startup of this process
+    private long mCreatedElapsed;
+    private final List<DailyReport> mDailyReports = new ArrayList<DailyReport>();
+
+    private final IAnalyticsService.Stub mBinder = new IAnalyticsService.Stub() {
+        @Override
+        public String getForegroundPackageName() {
+            enforceGetForegroundPermission();
+            return mForegroundTracker.getForegroundPackageName();
+        }
+
+        @Override
+        public String getForegroundActivity() {
+            enforceGetForegroundPermission();
+            ComponentName foreground = mForegroundTracker.getForeground();
+            return foreground != null ? foreground.flattenToShortString() : null;
+        }
+
+        @Override
+        public long getForegroundTimeMillis(String packageName) {
+            enforceGetForegroundPermission();
+            return mForegroundTracker.getForegroundTimeMillis(
+                    packageName, SystemClock.elapsedRealtime());
+        }
+    };
+
+    /**
+     * The service is exported for events of any app, but foreground app is as private as
+     * running tasks, so binder calls need a signature permission.
+     */
+    private void enforceGetForegroundPermission() {
+        enforceCallingPermission(AnalyticsHelper.PERMISSION_GET_FOREGROUND,
+                "query foreground app");
+    }
 
     public AnalyticsService() {
         super("AnalyticsService");
         initEventHandlers();
+        mDailyReports.add(mUsageSessionEngine);
+        mDailyReports.add(mScreenTransitionGraph);
+        mDailyReports.add(mHeavyHitters);
+        mDailyReports.add(mDistinctCounters);
+        mDailyReports.add(mHistogramStore);
+        mDailyReports.add(mAppDrainAttribution);
+        mDailyReports.add(mWakeupStats);
+        mDailyReports.add(mPressureStats);
     }
 
     @Override
@@ -79,6 +156,50 @@ public class AnalyticsService extends ImmortalIntentService {
         mSharedPrefs = getSharedPreferences(sSharedPreferencesKey,
                 Context.MODE_PRIVATE);
 
+        mPowerStats = new PowerStats(this, mHistogramStore);
+        mDropBoxCollector = new DropBoxCollector(this, mSharedPrefs, mHeavyHitters,
+                mDistinctCounters);
+        mSystemSampler = new SystemSampler(getHandler(), mHistogramStore,
+                getResources().getInteger(R.integer.config_systemSampleIntervalSeconds)
+                        * MS_IN_SECOND);
+        mThermalStats = new ThermalStats(getHandler(), mHistogramStore);
+        mDailyReports.add(mThermalStats);
+        mAppTrafficStats = new AppTrafficStats(this);
+        mDailyReports.add(mAppTrafficStats);
+        if (mEnable) {
+            getHandler().post(new Runnable() {
+                @Override
+                public void run() {
+                    if (Util.isScreenOn(AnalyticsService.this)) {
+                        mSystemSampler.start();
+                    }
+                    mThermalStats.start();
+                    mAppTrafficStats.start();
+                }
+            });
+            new PressureMonitor(mForegroundTracker, new PressureMonitor.Callback() {
+                @Override
+                public void onStallEpisode(final String resource, long startElapsed,
+                        final long durationMillis, final long avg10Centi,
+                        final String foregroundPackage) {
+                    getHandler().post(new Runnable() {
+                        @Override
+                        public void run() {
+                            mPressureStats.onStallEpisode(
+                                    resource, durationMillis, avg10Centi, foregroundPackage);
+                        }
+                    });
+                }
+            }).start();
+        }
+        BatteryTracker.getInstance(this).addListener(new BatteryTracker.Listener() {
+            @Override
+            public void onBatteryChanged(BatteryState state) {
+                startService(new Intent(ACTION_BATTERY_CHANGED, null,
+                        AnalyticsService.this, AnalyticsService.class));
+            }
+        });
+
         mReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
@@ -88,20 +209,20 @@ public class AnalyticsService extends ImmortalIntentService {
                 }
                 if (Intent.ACTION_SCREEN_OFF.equals(action)) {
                     AnalyticsHelper.screenOff(getBaseContext());
-                    PowerStats.onScreenOff(context);
                 } else if (Intent.ACTION_SCREEN_ON.equals(action)) {
                     AnalyticsHelper.screenOn(getBaseContext());
-                    PowerStats.onScreenOn(context);
                 } else if (Intent.ACTION_SHUTDOWN.equals(action)) {
                     AnalyticsHelper.onShutdown(getBaseContext());
-                    PowerStats.onScreenOff(context);
                 } else if (BootCompletedReceiver.ACTION_BOOT_COMPLETED.equals(action)) {
                     AnalyticsHelper.onBootCompleted(getBaseContext());
-                    PowerStats.onScreenOn(context);
-                } else if (Intent.ACTION_POWER_CONNECTED.equals(action)) {
-                    PowerStats.onPowerConnected(context);
-                } else if (Intent.ACTION_POWER_DISCONNECTED.equals(action)) {
-                    PowerStats.onPowerDisconnected(context);
+                } else if (BootCompletedReceiver.ACTION_SEND_LOGS.equals(action)) {
+                    startService(new Intent(action, null, context, AnalyticsService.class));
+                } else if (DropBoxManager.ACTION_DROPBOX_ENTRY_ADDED.equals(action)) {
+                    if (DropBoxCollector.isCollected(
+                            intent.getStringExtra(DropBoxManager.EXTRA_TAG))) {
+                        startService(new Intent(ACTION_DROPBOX_ENTRY_ADDED, null, context,
+                                AnalyticsService.class));
+                    }
                 }
             }
         };
@@ -114,11 +235,40 @@ public class AnalyticsService extends ImmortalIntentService {
         filter.addAction(BootCompletedReceiver.ACTION_BOOT_COMPLETED);
         filter.addAction(BootCompletedReceiver.ACTION_SEND_LOGS);
         filter.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
-        filter.addAction(Intent.ACTION_POWER_CONNECTED);
-        filter.addAction(Intent.ACTION_POWER_DISCONNECTED);
+        filter.addAction(DropBoxManager.ACTION_DROPBOX_ENTRY_ADDED);
         getBaseContext().registerReceiver(mReceiver, filter);
 
         mLogHelper = new LogHelper(this);
+        mAppLabelCache = new AppLabelCache(this, getHandler());
+
+        mPackageReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                String action = intent.getAction();
+                if (Intent.ACTION_PACKAGE_REMOVED.equals(action)
+                        && intent.getBooleanExtra(Intent.EXTRA_REPLACING, false)) {
+                    // ACTION_PACKAGE_REPLACED will follow
+                    return;
+                }
+                if (intent.getData() == null) {
+                    return;
+                }
+                final String packageName = intent.getData().getSchemeSpecificPart();
+                // the cache is used and saved on the worker thread
+                getHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mAppLabelCache.invalidate(packageName);
+                    }
+                });
+            }
+        };
+        IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addDataScheme("package");
+        getBaseContext().registerReceiver(mPackageReceiver, packageFilter);
+        mCreatedElapsed = SystemClock.elapsedRealtime();
     }
 
     @Override
@@ -141,6 +291,11 @@ public class AnalyticsService extends ImmortalIntentService {
         }
     }
 
+    @Override
+    public IBinder onBind(Intent intent) {
+        return mBinder;
+    }
+
     @Override
     public void onDestroy() {
         if (LOG){
@@ -169,10 +324,13 @@ public class AnalyticsService extends ImmortalIntentService {
             Log.e(TAG, "onHitScreen, invalid ComponentName: " + componentName);
             return;
         }
-
-        mLogHelper.newAppViewBuilder()
-            .setActivityDimensions(component)
-            .send();
+        long nowElapsed = SystemClock.elapsedRealtime();
+        mForegroundTracker.onHitScreen(component, nowElapsed);
+        mUsageSessionEngine.onHitScreen(component.getPackageName(), nowElapsed);
+        mScreenTransitionGraph.onHitScreen(component);
+        mHeavyHitters.onHitScreen(component);
+        mDistinctCounters.onHitScreen(component);
+        mAppDrainAttribution.onHitScreen(component.getPackageName(), nowElapsed);
     }
 
     private static long getCurrentTimeInSeconds() {
@@ -202,10 +360,41 @@ public class AnalyticsService extends ImmortalIntentService {
         return nowSeconds - latestChangeTime;
     }
 
+    private static long getLocalDay(long millis) {
+        return (millis + TimeZone.getDefault().getOffset(millis)) / MS_IN_DAY;
+    }
+
+    /**
+     * Uploads daily reports if the day has changed since the latest upload.
+     */
+    private void reportDailyIfNeeded() {
+        long now = System.currentTimeMillis();
+        long latestSendTime = mSharedPrefs.getLong(SHARED_PREFS_KEY_LATEST_SEND_TIME, -1);
+        if (latestSendTime == -1) {
+            mSharedPrefs.edit()
+                    .putLong(SHARED_PREFS_KEY_LATEST_SEND_TIME, now)
+                    .commit();
+        } else if (getLocalDay(now) != getLocalDay(latestSendTime)) {
+            reportDaily();
+        }
+    }
+
+    private void reportDaily() {
+        long nowElapsed = SystemClock.elapsedRealtime();
+        for (DailyReport report : mDailyReports) {
+            report.report(mLogHelper, nowElapsed);
+        }
+        mSharedPrefs.edit()
+                .putLong(SHARED_PREFS_KEY_LATEST_SEND_TIME, System.currentTimeMillis())
+                .commit();
+    }
+
     private void onBootCompleted(Intent data) {
-        long bootTime = SystemClock.elapsedRealtime() / MS_IN_SECOND;
+        long nowElapsed = SystemClock.elapsedRealtime();
+        long bootTime = nowElapsed / MS_IN_SECOND;
         mLogHelper.newEventBuilder(EVENT_CATEGORY_POWER, EVENT_BOOT_COMPLETED, null, bootTime)
                 .send();
+        BootPhases.report(mLogHelper, mHistogramStore, nowElapsed, mCreatedElapsed);
     }
 
     private void onShutdown(Intent data) {
@@ -224,6 +413,8 @@ public class AnalyticsService extends ImmortalIntentService {
             Log.w(TAG, "onShutdown, cannot get data");
             return;
         }
+        mHistogramStore.record(HISTOGRAM_UPTIME_SECONDS, powerOnIncludeSleep);
+        mHistogramStore.record(HISTOGRAM_AWAKE_SECONDS, powerOnNotSleep);
         mLogHelper.newEventBuilder(
                 EVENT_CATEGORY_POWER, EVENT_SHUTDOWN, null, powerOnIncludeSleep)
                 .setPower(powerOnNotSleep)
@@ -231,7 +422,17 @@ public class AnalyticsService extends ImmortalIntentService {
     }
 
     private void onScreenOn(Intent data) {
+        long nowElapsed = SystemClock.elapsedRealtime();
+        mForegroundTracker.onScreenOn(nowElapsed);
+        mUsageSessionEngine.onScreenOn(nowElapsed);
+        mPowerStats.onScreenOn();
+        mSystemSampler.start();
+        mAppDrainAttribution.onScreenOn(nowElapsed);
+        mWakeupStats.onScreenOn();
         Long screenOffDuration = getDurationAndSaveScreenChangeTime();
+        if (screenOffDuration != null) {
+            mHistogramStore.record(HISTOGRAM_SCREEN_OFF_SECONDS, screenOffDuration);
+        }
 
         mLogHelper.newEventBuilder(
                 EVENT_CATEGORY_POWER, EVENT_SCREEN_ON, null, screenOffDuration)
@@ -239,7 +440,17 @@ public class AnalyticsService extends ImmortalIntentService {
     }
 
     private void onScreenOff(Intent data) {
+        long nowElapsed = SystemClock.elapsedRealtime();
+        mForegroundTracker.onScreenOff(nowElapsed);
+        mUsageSessionEngine.onScreenOff(nowElapsed);
+        mPowerStats.onScreenOff();
+        mSystemSampler.stop();
+        mAppDrainAttribution.onScreenOff(nowElapsed);
+        mWakeupStats.onScreenOff();
         Long screenOnDuration = getDurationAndSaveScreenChangeTime();
+        if (screenOnDuration != null) {
+            mHistogramStore.record(HISTOGRAM_SCREEN_ON_SECONDS, screenOnDuration);
+        }
         mLogHelper.newEventBuilder(
                 EVENT_CATEGORY_POWER, EVENT_SCREEN_OFF, null, screenOnDuration)
                 .send();
@@ -263,6 +474,8 @@ public class AnalyticsService extends ImmortalIntentService {
             Log.e(TAG, "onException, cannot get data");
             return;
         }
+        mHeavyHitters.onException(packageName, exceptionDescription);
+        mDistinctCounters.onException(packageName);
 
         if (threadName != null &&
             !threadName.isEmpty() &&
@@ -279,26 +492,71 @@ public class AnalyticsService extends ImmortalIntentService {
         String event_category;
         String event_action;
         String event_label;
+        String event_label_package;
         Long event_value;
+        byte[] event_histogram;
         String packageName;
         boolean hasSampling;
         try {
             event_category = data.getStringExtra(AnalyticsHelper.EXTRA_EVENT_CATEGORY);
             event_action = data.getStringExtra(AnalyticsHelper.EXTRA_EVENT_ACTION);
             event_label = data.getStringExtra(AnalyticsHelper.EXTRA_EVENT_LABEL);
+            event_label_package = data.getStringExtra(AnalyticsHelper.EXTRA_EVENT_LABEL_PACKAGE);
             event_value = (Long) data.getSerializableExtra(AnalyticsHelper.EXTRA_EVENT_VALUE);
+            event_histogram = data.getByteArrayExtra(AnalyticsHelper.EXTRA_EVENT_HISTOGRAM);
             packageName = data.getStringExtra(AnalyticsHelper.EXTRA_PACKAGE_NAME);
             hasSampling = data.getBooleanExtra(AnalyticsHelper.EXTRA_HAS_SAMPLING, true);
         } catch (BadParcelableException e) {
             Log.w(TAG, "ignore BadParcelableException", e);
             return;
         }
+        if (event_label_package != null) {
+            event_label = mAppLabelCache.getPackageLabel(event_label_package);
+        }
+        mHeavyHitters.onCustomEvent(event_category, event_action, event_label);
+        if (event_histogram != null) {
+            try {
+                mHistogramStore.merge(event_category + "/" + event_action,
+                        LogLinearHistogram.fromByteArray(event_histogram));
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "onCustomEvent, invalid histogram", e);
+            }
+            return;
+        }
         mLogHelper.newEventBuilder(
                 event_category, event_action, event_label, event_value)
             .setPackageDimensions(packageName)
             .send();
     }
 
+    /**
+     * Sends each changed field of general logs as an event, whose action is the key and label
+     * is the value.
+     */
+    private void onGeneralLogs(Intent data) {
+        GeneralLogs logs;
+        try {
+            logs = data.getParcelableExtra(AnalyticsHelper.EXTRA_GENERAL);
+        } catch (BadParcelableException e) {
+            Log.w(TAG, "ignore BadParcelableException", e);
+            return;
+        }
+        if (logs == null) {
+            Log.e(TAG, "onGeneralLogs, no logs");
+            return;
+        }
+        String category = logs.getCategory();
+        if (category == null) {
+            category = EVENT_CATEGORY_GENERAL;
+        }
+        for (Map.Entry<String, String> e : logs.getLogMap().entrySet()) {
+            String key = e.getKey();
+            if (GeneralLogs.isField(key) && logs.isChanged(key)) {
+                mLogHelper.newEventBuilder(category, key, e.getValue(), null).send();
+            }
+        }
+    }
+
     private void initEventHandlers() {
         mStaticEventHandlers.put(AnalyticsHelper.ACTION_HIT_SCREEN, new EventHandler() {
             @Override
@@ -324,6 +582,11 @@ public class AnalyticsService extends ImmortalIntentService {
                 // time
                 onScreenOff(null);
                 removeScreenChangeTime();
+
+                mUsageSessionEngine.onShutdown(SystemClock.elapsedRealtime());
+                mPowerStats.onShutdown();
+                // in-memory statistics do not survive reboot
+                reportDaily();
             }
         });
         mStaticEventHandlers.put(AnalyticsHelper.ACTION_SCREEN_ON, new EventHandler() {
@@ -338,6 +601,29 @@ public class AnalyticsService extends ImmortalIntentService {
                 onScreenOff(intent);
             }
         });
+        mStaticEventHandlers.put(ACTION_BATTERY_CHANGED, new EventHandler() {
+            @Override
+            void onEvent(Intent intent) {
+                BatteryState state =
+                        BatteryTracker.getInstance(AnalyticsService.this).getState();
+                mPowerStats.onBatteryChanged(state);
+                mAppDrainAttribution.onBatteryChanged(state, SystemClock.elapsedRealtime());
+            }
+        });
+        mStaticEventHandlers.put(ACTION_DROPBOX_ENTRY_ADDED, new EventHandler() {
+            @Override
+            void onEvent(Intent intent) {
+                mDropBoxCollector.collect();
+            }
+        });
+        mStaticEventHandlers.put(BootCompletedReceiver.ACTION_SEND_LOGS, new EventHandler() {
+            @Override
+            void onEvent(Intent intent) {
+                // entries missed while not running, or beyond the read budget
+                mDropBoxCollector.collect();
+                reportDailyIfNeeded();
+            }
+        });
         mStaticEventHandlers.put(AnalyticsHelper.ACTION_EXCEPTION, new EventHandler() {
             @Override
             void onEvent(Intent intent) {
@@ -350,6 +636,12 @@ public class AnalyticsService extends ImmortalIntentService {
                 onCustomEvent(intent);
             }
         });
+        mStaticEventHandlers.put(AnalyticsHelper.ACTION_GENERAL, new EventHandler() {
+            @Override
+            void onEvent(Intent intent) {
+                onGeneralLogs(intent);
+            }
+        });
     }
     static abstract class EventHandler {
         abstract void onEvent(Intent intent);
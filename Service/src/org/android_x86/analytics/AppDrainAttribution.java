@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Attributes battery drain to foreground packages.
+ *
+ * Events are accounted by DrainLedger. Daily reports the total drain, and the packages with the
+ * most drain with their foreground time while discharging.
+ *
+ * Not thread safe, called on AnalyticsService's worker thread.
+ */
+class AppDrainAttribution implements DailyReport {
+    private static final String EVENT_CATEGORY_POWER_USAGE = "power_usage";
+    private static final String EVENT_ACTION_DAILY_APP_DRAIN = "daily_app_drain";
+    private static final String KEY_TOTAL = "total";
+
+    private static final int MAX_PACKAGES = 256;
+    private static final int MAX_REPORTED_PACKAGES = 20;
+    // reported drain is in 0.01%
+    private static final int REPORT_SCALE = 100;
+    private static final int MS_IN_SECOND = 1000;
+
+    private final DrainLedger mLedger = new DrainLedger(MAX_PACKAGES);
+
+    void onHitScreen(String packageName, long nowElapsed) {
+        mLedger.onHitScreen(packageName, nowElapsed);
+    }
+
+    void onScreenOn(long nowElapsed) {
+        mLedger.onScreenOn(nowElapsed);
+    }
+
+    void onScreenOff(long nowElapsed) {
+        mLedger.onScreenOff(nowElapsed);
+    }
+
+    void onBatteryChanged(BatteryState state, long nowElapsed) {
+        if (state == null) {
+            return;
+        }
+        mLedger.onBatteryChanged(state.getLevelPercentage(), state.isCharging(), nowElapsed);
+    }
+
+    @Override
+    public void report(LogHelper logHelper, long nowElapsed) {
+        mLedger.accumulate(nowElapsed);
+        if (mLedger.getTotalDrain() > 0) {
+            Integer[] ids = new Integer[mLedger.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = i;
+            }
+            Arrays.sort(ids, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return Double.compare(mLedger.getDrain(b), mLedger.getDrain(a));
+                }
+            });
+            CompactRecord record = new CompactRecord(
+                    EVENT_CATEGORY_POWER_USAGE, EVENT_ACTION_DAILY_APP_DRAIN);
+            record.add(KEY_TOTAL, Math.round(mLedger.getTotalDrain() * REPORT_SCALE));
+            for (int i = 0; i < ids.length && i < MAX_REPORTED_PACKAGES; i++) {
+                int id = ids[i];
+                if (mLedger.getDrain(id) <= 0) {
+                    break;
+                }
+                record.add(mLedger.getPackage(id), Math.round(mLedger.getDrain(id) * REPORT_SCALE),
+                        mLedger.getDischargingMillis(id) / MS_IN_SECOND);
+            }
+            record.send(logHelper);
+        }
+        mLedger.newDay();
+    }
+}
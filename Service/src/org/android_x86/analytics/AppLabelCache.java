@@ -0,0 +1,198 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.os.Handler;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of package labels: {package name} or {package name}/{app Chinese name}.
+ *
+ * Labels are resolved once per (package, versionCode) and persisted to a small index file,
+ * so they survive process restarts. Entries loaded from the index are verified against the
+ * installed versionCode on first use. Changes are saved once per SAVE_DELAY_MILLIS, so a burst
+ * of misses writes the index once; a save lost on process death only costs resolving again.
+ *
+ * Not thread safe, called on AnalyticsService's worker thread.
+ */
+class AppLabelCache {
+    private static final String TAG = "AppLabelCache";
+
+    private static final String INDEX_FILE_NAME = "app_labels.idx";
+    private static final int INDEX_VERSION = 1;
+    private static final int MAX_ENTRIES = 128;
+    private static final long SAVE_DELAY_MILLIS = 60 * 1000;
+
+    private static class Entry {
+        final int mVersionCode;
+        final String mLabel;
+        // whether versionCode has been checked against PackageManager in this process
+        boolean mVerified;
+
+        Entry(int versionCode, String label, boolean verified) {
+            mVersionCode = versionCode;
+            mLabel = label;
+            mVerified = verified;
+        }
+    }
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final AtomicFile mIndexFile;
+    private final LinkedHashMap<String, Entry> mEntries =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private boolean mLoaded;
+    private boolean mSaveScheduled;
+
+    private final Runnable mSaveRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mSaveScheduled = false;
+            save();
+        }
+    };
+
+    /**
+     * @param handler handler of the worker thread, to save on
+     */
+    AppLabelCache(Context context, Handler handler) {
+        mContext = context;
+        mHandler = handler;
+        mIndexFile = new AtomicFile(new File(context.getFilesDir(), INDEX_FILE_NAME));
+    }
+
+    /**
+     * Gets package label: {package name} or {package name}/{app Chinese name}
+     */
+    String getPackageLabel(String packageName) {
+        if (packageName == null || packageName.isEmpty()) {
+            return "";
+        }
+        loadIfNeeded();
+
+        Entry entry = mEntries.get(packageName);
+        if (entry != null && entry.mVerified) {
+            return entry.mLabel;
+        }
+
+        PackageInfo info;
+        try {
+            info = mContext.getPackageManager().getPackageInfo(packageName, 0);
+        } catch (NameNotFoundException e) {
+            return packageName;
+        }
+        if (entry != null && entry.mVersionCode == info.versionCode) {
+            entry.mVerified = true;
+            return entry.mLabel;
+        }
+
+        String label = AnalyticsHelper.getPackageLabel(mContext, info.applicationInfo);
+        mEntries.put(packageName, new Entry(info.versionCode, label, true));
+        scheduleSave();
+        return label;
+    }
+
+    /**
+     * Removes cached label, called when package is replaced or removed.
+     */
+    void invalidate(String packageName) {
+        loadIfNeeded();
+        if (mEntries.remove(packageName) != null) {
+            scheduleSave();
+        }
+    }
+
+    private void scheduleSave() {
+        if (!mSaveScheduled) {
+            mSaveScheduled = true;
+            mHandler.postDelayed(mSaveRunnable, SAVE_DELAY_MILLIS);
+        }
+    }
+
+    private void loadIfNeeded() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(mIndexFile.openRead());
+            if (in.readInt() != INDEX_VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String packageName = in.readUTF();
+                int versionCode = in.readInt();
+                String label = in.readUTF();
+                mEntries.put(packageName, new Entry(versionCode, label, false));
+            }
+        } catch (FileNotFoundException e) {
+            // first run
+        } catch (IOException e) {
+            Log.w(TAG, "fail to load label index", e);
+            mEntries.clear();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private void save() {
+        FileOutputStream out = null;
+        try {
+            out = mIndexFile.startWrite();
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(INDEX_VERSION);
+            data.writeInt(mEntries.size());
+            for (Map.Entry<String, Entry> e : mEntries.entrySet()) {
+                data.writeUTF(e.getKey());
+                data.writeInt(e.getValue().mVersionCode);
+                data.writeUTF(e.getValue().mLabel);
+            }
+            data.flush();
+            mIndexFile.finishWrite(out);
+        } catch (IOException e) {
+            Log.w(TAG, "fail to save label index", e);
+            if (out != null) {
+                mIndexFile.failWrite(out);
+            }
+        }
+    }
+}
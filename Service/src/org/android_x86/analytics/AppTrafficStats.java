@@ -0,0 +1,214 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.net.INetworkStatsService;
+import android.net.INetworkStatsSession;
+import android.net.NetworkStats;
+import android.net.NetworkTemplate;
+import android.net.TrafficStats;
+import android.os.RemoteException;
+import android.os.ServiceManager;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Per-app network traffic by network type.
+ *
+ * Queries the per-uid summary of NetworkStatsService for each network type since the previous
+ * report, since TrafficStats returns UNSUPPORTED for other uids since N. Uids of removed apps
+ * are merged by the service into UID_REMOVED. Uids are resolved to package or shared user names
+ * only when reporting. At most MAX_UIDS uids are kept per report, the traffic of others is
+ * counted in the type totals only.
+ *
+ * Not thread safe, called on AnalyticsService's worker thread.
+ */
+class AppTrafficStats implements DailyReport {
+    private static final String TAG = "AppTrafficStats";
+
+    private static final String EVENT_CATEGORY_NETWORK = "network";
+    private static final String EVENT_ACTION_DAILY_APP_TRAFFIC = "daily_app_traffic";
+
+    static final int TYPE_MOBILE = 0;
+    static final int TYPE_WIFI = 1;
+    static final int TYPE_ETHERNET = 2;
+    private static final String[] TYPE_NAMES = {"mobile", "wifi", "ethernet"};
+    private static final int TYPES = TYPE_NAMES.length;
+
+    private static final int MAX_UIDS = 512;
+    private static final int MAX_REPORTED_UIDS = 20;
+    private static final int KB = 1024;
+
+    private final Context mContext;
+    // rx and tx bytes of each type by uid
+    private final SparseArray<long[]> mEntries = new SparseArray<long[]>();
+    private final long[] mTotalRx = new long[TYPES];
+    private final long[] mTotalTx = new long[TYPES];
+
+    // start of current day in wall time, 0 if not started
+    private long mStartTime;
+
+    AppTrafficStats(Context context) {
+        mContext = context;
+    }
+
+    void start() {
+        if (mStartTime == 0) {
+            mStartTime = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Adds traffic of all uids between start and end in wall time.
+     * @return false if the statistics cannot be queried
+     */
+    private boolean query(long start, long end) {
+        INetworkStatsService service = INetworkStatsService.Stub.asInterface(
+                ServiceManager.getService(Context.NETWORK_STATS_SERVICE));
+        if (service == null) {
+            return false;
+        }
+        INetworkStatsSession session = null;
+        try {
+            // include traffic since the last poll of the service
+            service.forceUpdate();
+            session = service.openSession();
+            NetworkStats.Entry entry = null;
+            for (int type = 0; type < TYPES; type++) {
+                NetworkStats stats =
+                        session.getSummaryForAllUid(createTemplate(type), start, end, false);
+                for (int i = 0; i < stats.size(); i++) {
+                    entry = stats.getValues(i, entry);
+                    add(entry.uid, type, entry.rxBytes, entry.txBytes);
+                }
+            }
+            return true;
+        } catch (RemoteException e) {
+            Log.w(TAG, "fail to query network stats", e);
+        } catch (SecurityException e) {
+            Log.w(TAG, "no permission to query network stats", e);
+        } finally {
+            TrafficStats.closeQuietly(session);
+        }
+        return false;
+    }
+
+    private static NetworkTemplate createTemplate(int type) {
+        switch (type) {
+            case TYPE_MOBILE:
+                return NetworkTemplate.buildTemplateMobileWildcard();
+            case TYPE_WIFI:
+                return NetworkTemplate.buildTemplateWifiWildcard();
+            default:
+                return NetworkTemplate.buildTemplateEthernet();
+        }
+    }
+
+    private void add(int uid, int type, long rx, long tx) {
+        mTotalRx[type] += rx;
+        mTotalTx[type] += tx;
+        // the summary has an entry per uid, set and tag
+        long[] entry = mEntries.get(uid);
+        if (entry == null) {
+            if (mEntries.size() >= MAX_UIDS) {
+                return;
+            }
+            entry = new long[TYPES * 2];
+            mEntries.put(uid, entry);
+        }
+        entry[type * 2] += rx;
+        entry[type * 2 + 1] += tx;
+    }
+
+    /**
+     * Sends "type:rxKB,txKB" of each type, then top uids by total traffic as
+     * "name:mobileRxKB,mobileTxKB,wifiRxKB,...", and starts a new day.
+     */
+    @Override
+    public void report(LogHelper logHelper, long nowElapsed) {
+        if (mStartTime == 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        boolean queried = query(mStartTime, now);
+        mStartTime = now;
+        long total = 0;
+        for (int type = 0; type < TYPES; type++) {
+            total += mTotalRx[type] + mTotalTx[type];
+        }
+        if (queried && total > 0) {
+            CompactRecord record = new CompactRecord(
+                    EVENT_CATEGORY_NETWORK, EVENT_ACTION_DAILY_APP_TRAFFIC);
+            for (int type = 0; type < TYPES; type++) {
+                record.add(TYPE_NAMES[type], mTotalRx[type] / KB, mTotalTx[type] / KB);
+            }
+            Integer[] indexes = new Integer[mEntries.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = i;
+            }
+            Arrays.sort(indexes, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return Long.compare(getTotal(mEntries.valueAt(b)),
+                            getTotal(mEntries.valueAt(a)));
+                }
+            });
+            PackageManager pm = mContext.getPackageManager();
+            long[] values = new long[TYPES * 2];
+            for (int i = 0; i < indexes.length && i < MAX_REPORTED_UIDS; i++) {
+                long[] entry = mEntries.valueAt(indexes[i]);
+                if (getTotal(entry) < KB) {
+                    break;
+                }
+                for (int j = 0; j < values.length; j++) {
+                    values[j] = entry[j] / KB;
+                }
+                record.add(getUidName(pm, mEntries.keyAt(indexes[i])), values);
+            }
+            record.send(logHelper);
+        }
+
+        mEntries.clear();
+        Arrays.fill(mTotalRx, 0);
+        Arrays.fill(mTotalTx, 0);
+    }
+
+    private static long getTotal(long[] entry) {
+        long total = 0;
+        for (long bytes : entry) {
+            total += bytes;
+        }
+        return total;
+    }
+
+    /**
+     * Gets package name, or "sharedUserId:uid" for uids shared by packages.
+     */
+    private static String getUidName(PackageManager pm, int uid) {
+        if (uid == TrafficStats.UID_REMOVED) {
+            return "removed";
+        } else if (uid == TrafficStats.UID_TETHERING) {
+            return "tethering";
+        }
+        String name = pm.getNameForUid(uid);
+        return name != null ? name : "uid" + uid;
+    }
+}
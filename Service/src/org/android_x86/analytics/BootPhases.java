@@ -0,0 +1,175 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import android.os.Process;
+import android.os.SystemProperties;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.EventLog;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Boot time broken down into phases.
+ *
+ * Markers in milliseconds since boot come from ro.boottime.* properties set by init, and from
+ * boot_progress_* events logged by zygote and system_server, in uptime which does not differ
+ * from elapsed time before boot completes. Durations between markers are recorded into
+ * histograms "boot/{phase}_ms", so regressions show in daily percentiles across devices, and
+ * the markers of each boot are sent as one record. Also measures the startup of this process.
+ */
+class BootPhases {
+    private static final String TAG = "BootPhases";
+
+    private static final String EVENT_CATEGORY_POWER = "power";
+    private static final String EVENT_ACTION_BOOT_PHASES = "boot_phases";
+    private static final String KEY_BOOT_COMPLETED = "boot_completed";
+    private static final String KEY_ANALYTICS = "analytics";
+    private static final String HISTOGRAM_PREFIX = "boot/";
+    private static final String HISTOGRAM_SUFFIX = "_ms";
+
+    private static final String PROPERTY_BOOTTIME_PREFIX = "ro.boottime.";
+    private static final long NS_IN_MS = 1000 * 1000;
+    private static final int MS_IN_SECOND = 1000;
+
+    // markers in boot order, the last one is boot completed
+    private static final String[] MARKERS = {
+            "init",
+            "zygote",
+            "boot_progress_start",
+            "boot_progress_preload_start",
+            "boot_progress_preload_end",
+            "boot_progress_system_run",
+            "boot_progress_pms_start",
+            "boot_progress_pms_ready",
+            "boot_progress_ams_ready",
+            "boot_progress_enable_screen",
+            KEY_BOOT_COMPLETED,
+    };
+    // markers set as properties in nanoseconds, others are events in milliseconds
+    private static final int PROPERTY_MARKERS = 2;
+    // phases as {name, start marker, end marker}, starting at 0 if no start marker
+    private static final String[][] PHASES = {
+            {"kernel", null, "init"},
+            {"init", "init", "zygote"},
+            {"zygote", "boot_progress_start", "boot_progress_system_run"},
+            {"preload", "boot_progress_preload_start", "boot_progress_preload_end"},
+            {"system_server", "boot_progress_system_run", "boot_progress_ams_ready"},
+            {"pms", "boot_progress_pms_start", "boot_progress_pms_ready"},
+            {"enable_screen", "boot_progress_ams_ready", "boot_progress_enable_screen"},
+            {"boot_completed", "boot_progress_enable_screen", KEY_BOOT_COMPLETED},
+            {"total", null, KEY_BOOT_COMPLETED},
+    };
+    private static final String HISTOGRAM_ANALYTICS_STARTUP = "boot/analytics_startup_ms";
+
+    private BootPhases() {
+    }
+
+    /**
+     * Reports phases of current boot.
+     * @param bootCompletedElapsed when boot completed is received
+     * @param serviceCreatedElapsed when AnalyticsService is created
+     */
+    static void report(LogHelper logHelper, HistogramStore histogramStore,
+            long bootCompletedElapsed, long serviceCreatedElapsed) {
+        long[] markers = new long[MARKERS.length];
+        for (int i = 0; i < PROPERTY_MARKERS; i++) {
+            markers[i] = SystemProperties.getLong(PROPERTY_BOOTTIME_PREFIX + MARKERS[i], 0)
+                    / NS_IN_MS;
+        }
+        readEvents(markers);
+        markers[MARKERS.length - 1] = bootCompletedElapsed;
+
+        CompactRecord record = new CompactRecord(EVENT_CATEGORY_POWER, EVENT_ACTION_BOOT_PHASES);
+        for (int i = 0; i < MARKERS.length; i++) {
+            if (markers[i] > 0) {
+                record.add(MARKERS[i], markers[i]);
+            }
+        }
+        for (String[] phase : PHASES) {
+            long start = phase[1] != null ? markers[indexOf(phase[1])] : 0;
+            long end = markers[indexOf(phase[2])];
+            if ((phase[1] == null || start > 0) && end > 0 && end >= start) {
+                histogramStore.record(HISTOGRAM_PREFIX + phase[0] + HISTOGRAM_SUFFIX,
+                        end - start);
+            }
+        }
+
+        // process start, time until service created, and cpu time used so far
+        long processStart = getProcessStartElapsed();
+        if (processStart > 0 && serviceCreatedElapsed >= processStart) {
+            long startup = serviceCreatedElapsed - processStart;
+            record.add(KEY_ANALYTICS, processStart, startup, Process.getElapsedCpuTime());
+            histogramStore.record(HISTOGRAM_ANALYTICS_STARTUP, startup);
+        }
+        record.send(logHelper);
+    }
+
+    /**
+     * Fills markers of boot_progress_* events, the last occurrence wins.
+     */
+    private static void readEvents(long[] markers) {
+        List<Integer> indexes = new ArrayList<Integer>();
+        List<Integer> tags = new ArrayList<Integer>();
+        for (int i = PROPERTY_MARKERS; i < MARKERS.length - 1; i++) {
+            int tag = EventLog.getTagCode(MARKERS[i]);
+            if (tag != -1) {
+                indexes.add(i);
+                tags.add(tag);
+            }
+        }
+        int[] tagArray = new int[tags.size()];
+        for (int i = 0; i < tagArray.length; i++) {
+            tagArray[i] = tags.get(i);
+        }
+        List<EventLog.Event> events = new ArrayList<EventLog.Event>();
+        try {
+            EventLog.readEvents(tagArray, events);
+        } catch (IOException e) {
+            Log.w(TAG, "fail to read boot progress events", e);
+            return;
+        }
+        for (EventLog.Event event : events) {
+            int i = tags.indexOf(event.getTag());
+            Object data = event.getData();
+            if (i != -1 && data instanceof Number) {
+                markers[indexes.get(i)] = ((Number) data).longValue();
+            }
+        }
+    }
+
+    /**
+     * Gets start time of this process in elapsed realtime.
+     */
+    private static long getProcessStartElapsed() {
+        long ticks = ProcessStat.readStartTicks(new ProcFileReader(512, 1024), "/proc/self/stat");
+        long ticksPerSecond = Os.sysconf(OsConstants._SC_CLK_TCK);
+        return ticks > 0 && ticksPerSecond > 0 ? ticks * MS_IN_SECOND / ticksPerSecond : 0;
+    }
+
+    private static int indexOf(String marker) {
+        for (int i = 0; i < MARKERS.length; i++) {
+            if (MARKERS[i].equals(marker)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(marker);
+    }
+}
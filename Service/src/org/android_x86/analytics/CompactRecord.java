@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import android.util.Base64;
+
+/**
+ * Summary record uploaded as Google Analytics events.
+ *
+ * Entries are encoded as "key:value,value,...;" and split into labels not longer than
+ * MAX_LABEL_LENGTH bytes in UTF-8, the event value is the index of the part. Keys may be CJK
+ * text, which takes 3 bytes per char.
+ */
+class CompactRecord {
+    // Google Analytics limits event label to 500 bytes, lengths are in UTF-8 bytes
+    private static final int MAX_LABEL_LENGTH = 500;
+    private static final int MAX_CHUNK_LENGTH = 400;
+
+    private final String mCategory;
+    private final String mAction;
+    private final StringBuilder mBuilder = new StringBuilder();
+    private final StringBuilder mEntry = new StringBuilder();
+
+    CompactRecord(String category, String action) {
+        mCategory = category;
+        mAction = action;
+    }
+
+    CompactRecord add(String key, long... values) {
+        mEntry.setLength(0);
+        mEntry.append(key).append(':');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                mEntry.append(',');
+            }
+            mEntry.append(values[i]);
+        }
+        return append(mEntry);
+    }
+
+    CompactRecord add(String key, String value) {
+        mEntry.setLength(0);
+        mEntry.append(key).append(':').append(value);
+        return append(mEntry);
+    }
+
+    /**
+     * Adds binary data in base64, split into "{key}.{index}:{chunk}" entries.
+     */
+    CompactRecord addBytes(String key, byte[] data) {
+        String base64 = Base64.encodeToString(data, Base64.NO_WRAP);
+        for (int i = 0, start = 0; start < base64.length(); i++, start += MAX_CHUNK_LENGTH) {
+            add(key + "." + i,
+                    base64.substring(start, Math.min(base64.length(), start + MAX_CHUNK_LENGTH)));
+        }
+        return this;
+    }
+
+    /**
+     * Adds monitored keys of sketch ordered by count descending as "key:count,error", the first
+     * entry is "{totalKey}:total,maxError".
+     */
+    CompactRecord addSketch(String totalKey, SpaceSavingSketch sketch) {
+        add(totalKey, sketch.getTotal(), sketch.getMaxError());
+        for (int slot : sketch.getSlotsByCount()) {
+            add(sketch.getKey(slot), sketch.getCount(slot), sketch.getError(slot));
+        }
+        return this;
+    }
+
+    private CompactRecord append(StringBuilder entry) {
+        // drop the tail of oversized entry, so every entry fits in one label with separator
+        int bytes = 0;
+        for (int i = 0; i < entry.length(); i++) {
+            bytes += utf8Length(entry, i);
+            if (bytes > MAX_LABEL_LENGTH - 1) {
+                // do not leave half of a surrogate pair
+                entry.setLength(i > 0 && Character.isHighSurrogate(entry.charAt(i - 1))
+                        ? i - 1 : i);
+                break;
+            }
+        }
+        // keys may come from other apps, keep the separator unambiguous
+        for (int i = 0; i < entry.length(); i++) {
+            if (entry.charAt(i) == ';') {
+                entry.setCharAt(i, ',');
+            }
+        }
+        mBuilder.append(entry).append(';');
+        return this;
+    }
+
+    boolean isEmpty() {
+        return mBuilder.length() == 0;
+    }
+
+    void send(LogHelper logHelper) {
+        long part = 0;
+        int start = 0;
+        while (start < mBuilder.length()) {
+            int end = start;
+            int bytes = 0;
+            // cut at the last entry separator within the limit
+            while (true) {
+                int next = mBuilder.indexOf(";", end) + 1;
+                if (next == 0) {
+                    break;
+                }
+                for (int i = end; i < next; i++) {
+                    bytes += utf8Length(mBuilder, i);
+                }
+                if (bytes > MAX_LABEL_LENGTH) {
+                    break;
+                }
+                end = next;
+            }
+            logHelper.newEventBuilder(mCategory, mAction, mBuilder.substring(start, end), part++)
+                    .send();
+            start = end;
+        }
+    }
+
+    /**
+     * Gets UTF-8 length of char at index, a surrogate pair counts 2 bytes for each half.
+     */
+    private static int utf8Length(CharSequence s, int index) {
+        char c = s.charAt(index);
+        if (c < 0x80) {
+            return 1;
+        } else if (c < 0x800 || Character.isSurrogate(c)) {
+            return 2;
+        }
+        return 3;
+    }
+
+    @Override
+    public String toString() {
+        return mCategory + "/" + mAction + " " + mBuilder;
+    }
+}
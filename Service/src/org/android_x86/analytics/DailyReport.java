@@ -0,0 +1,28 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+/**
+ * Statistics aggregated in memory by AnalyticsService and uploaded once per day, or at
+ * shutdown since they are not kept across reboot.
+ */
+interface DailyReport {
+    /**
+     * Uploads statistics of the finished period and starts a new one.
+     * Called on AnalyticsService's worker thread.
+     */
+    void report(LogHelper logHelper, long nowElapsed);
+}
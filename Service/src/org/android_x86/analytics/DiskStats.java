@@ -0,0 +1,197 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-device I/O statistics from /proc/diskstats deltas.
+ *
+ * For each built-in disk, records IOPS, throughput, average in-flight requests, average time of
+ * a request including queueing (await) and average time the device was busy per request
+ * (service time) of every sample window, keyed by "disk/{type}/{name}/...", e.g.
+ * "disk/emmc/mmcblk0/iops". Partitions, virtual and removable devices are ignored.
+ *
+ * Not thread safe, called on AnalyticsService's worker thread.
+ */
+class DiskStats {
+    /**
+     * Receives values of each sample window, e.g. a HistogramStore.
+     */
+    interface Recorder {
+        void record(String key, long value);
+    }
+
+    private static final String PROC_DISKSTATS = "/proc/diskstats";
+    // bounds the number of histograms
+    private static final int MAX_DEVICES = 2;
+
+    // columns after major, minor and name
+    private static final int READS = 0;
+    private static final int SECTORS_READ = 2;
+    private static final int MS_READING = 3;
+    private static final int WRITES = 4;
+    private static final int SECTORS_WRITTEN = 6;
+    private static final int MS_WRITING = 7;
+    private static final int MS_DOING_IO = 9;
+    private static final int MS_WEIGHTED = 10;
+    private static final int COLUMNS = 11;
+
+    private static final int SECTOR_SIZE = 512;
+    private static final int KB = 1024;
+    private static final int MS_IN_SECOND = 1000;
+    private static final int US_IN_MS = 1000;
+    private static final int CENTI = 100;
+
+    private final Recorder mRecorder;
+    private final ProcFileReader mReader = new ProcFileReader();
+    private final String mPath;
+    private final String[] mNames;
+    private final String[] mKeyPrefixes;
+
+    private final long[][] mPrevious;
+    private final long[][] mCurrent;
+    private final boolean[] mFound;
+    // time of previous sample, 0 if none
+    private long mPreviousTime;
+
+    /**
+     * @param path diskstats file to read
+     * @param names names of devices to sample
+     * @param keyPrefixes key prefixes of devices
+     */
+    DiskStats(String path, String[] names, String[] keyPrefixes, Recorder recorder) {
+        mPath = path;
+        mNames = names;
+        mKeyPrefixes = keyPrefixes;
+        mRecorder = recorder;
+        int n = names.length;
+        mPrevious = new long[n][COLUMNS];
+        mCurrent = new long[n][COLUMNS];
+        mFound = new boolean[n];
+    }
+
+    /**
+     * Creates statistics of built-in disks.
+     */
+    static DiskStats ofBuiltInDisks(Recorder recorder) {
+        List<BlockDevice> devices = new ArrayList<BlockDevice>();
+        for (BlockDevice device : BlockDevice.list()) {
+            if (!device.isRemovable() && devices.size() < MAX_DEVICES) {
+                devices.add(device);
+            }
+        }
+        int n = devices.size();
+        String[] names = new String[n];
+        String[] keyPrefixes = new String[n];
+        for (int i = 0; i < n; i++) {
+            BlockDevice device = devices.get(i);
+            names[i] = device.getName();
+            keyPrefixes[i] = "disk/" + device.getType() + "/" + device.getName() + "/";
+        }
+        return new DiskStats(PROC_DISKSTATS, names, keyPrefixes, recorder);
+    }
+
+    /**
+     * Forgets the previous sample, e.g. when sampling is paused.
+     */
+    void reset() {
+        mPreviousTime = 0;
+    }
+
+    /**
+     * Samples devices, and records values of the window since previous sample.
+     * @return false if diskstats cannot be read
+     */
+    boolean sample(long nowElapsed) {
+        if (mNames.length == 0) {
+            return true;
+        }
+        try {
+            mReader.read(mPath);
+        } catch (IOException e) {
+            mPreviousTime = 0;
+            return false;
+        }
+        for (int i = 0; i < mNames.length; i++) {
+            mFound[i] = false;
+        }
+        while (mReader.nextLine()) {
+            // major minor name
+            if (!mReader.nextToken() || !mReader.nextToken() || !mReader.nextToken()) {
+                continue;
+            }
+            for (int i = 0; i < mNames.length; i++) {
+                if (mReader.tokenEquals(mNames[i])) {
+                    for (int c = 0; c < COLUMNS; c++) {
+                        mCurrent[i][c] = mReader.nextLong(0);
+                    }
+                    mFound[i] = true;
+                    break;
+                }
+            }
+        }
+
+        long interval = nowElapsed - mPreviousTime;
+        for (int i = 0; i < mNames.length; i++) {
+            if (!mFound[i]) {
+                continue;
+            }
+            if (mPreviousTime > 0 && interval > 0) {
+                record(i, interval);
+            }
+            System.arraycopy(mCurrent[i], 0, mPrevious[i], 0, COLUMNS);
+        }
+        mPreviousTime = nowElapsed;
+        return true;
+    }
+
+    private void record(int i, long intervalMillis) {
+        long[] current = mCurrent[i];
+        long[] previous = mPrevious[i];
+        // counters are 32 bits on some kernels and may wrap, or restart when the device is
+        // re-added, skip the window instead of recording a wrong or zero rate
+        for (int c = 0; c < COLUMNS; c++) {
+            if (current[c] < previous[c]) {
+                return;
+            }
+        }
+        long ios = delta(current, previous, READS) + delta(current, previous, WRITES);
+        long sectors = delta(current, previous, SECTORS_READ)
+                + delta(current, previous, SECTORS_WRITTEN);
+        // time of requests, overlapping ones counted each
+        long requestMillis = delta(current, previous, MS_READING)
+                + delta(current, previous, MS_WRITING);
+        long busyMillis = delta(current, previous, MS_DOING_IO);
+        long weightedMillis = delta(current, previous, MS_WEIGHTED);
+
+        String prefix = mKeyPrefixes[i];
+        mRecorder.record(prefix + "iops", ios * MS_IN_SECOND / intervalMillis);
+        mRecorder.record(prefix + "kb_per_second",
+                sectors * SECTOR_SIZE / KB * MS_IN_SECOND / intervalMillis);
+        mRecorder.record(prefix + "queue_depth_centi", weightedMillis * CENTI / intervalMillis);
+        if (ios > 0) {
+            mRecorder.record(prefix + "await_us", requestMillis * US_IN_MS / ios);
+            mRecorder.record(prefix + "service_time_us", busyMillis * US_IN_MS / ios);
+        }
+    }
+
+    private static long delta(long[] current, long[] previous, int column) {
+        return current[column] - previous[column];
+    }
+}
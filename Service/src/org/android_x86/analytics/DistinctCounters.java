@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import android.content.ComponentName;
+
+/**
+ * Daily distinct apps, screens and crashing packages counted by HyperLogLog.
+ *
+ * Each counter is uploaded as "{name}:{estimate}" followed by its serialized registers in
+ * base64, split into "{name}.{index}:{chunk}" entries to fit event labels.
+ *
+ * Not thread safe, called on AnalyticsService's worker thread.
+ */
+class DistinctCounters implements DailyReport {
+    private static final String EVENT_CATEGORY_DISTINCT = "distinct";
+    private static final String EVENT_ACTION_DAILY = "daily";
+
+    private static final String KEY_APPS = "apps";
+    private static final String KEY_SCREENS = "screens";
+    private static final String KEY_CRASHING_PACKAGES = "crashing_packages";
+
+    // 1024 registers, 3.25% standard error, 769 bytes serialized
+    private static final int PRECISION = 10;
+
+    private final HyperLogLog mApps = new HyperLogLog(PRECISION);
+    private final HyperLogLog mScreens = new HyperLogLog(PRECISION);
+    private final HyperLogLog mCrashingPackages = new HyperLogLog(PRECISION);
+
+    void onHitScreen(ComponentName component) {
+        mApps.offer(component.getPackageName());
+        mScreens.offer(component.flattenToShortString());
+    }
+
+    void onException(String packageName) {
+        if (packageName != null) {
+            mCrashingPackages.offer(packageName);
+        }
+    }
+
+    @Override
+    public void report(LogHelper logHelper, long nowElapsed) {
+        CompactRecord record = new CompactRecord(EVENT_CATEGORY_DISTINCT, EVENT_ACTION_DAILY);
+        write(record, KEY_APPS, mApps);
+        write(record, KEY_SCREENS, mScreens);
+        write(record, KEY_CRASHING_PACKAGES, mCrashingPackages);
+        if (!record.isEmpty()) {
+            record.send(logHelper);
+        }
+    }
+
+    private static void write(CompactRecord record, String key, HyperLogLog hll) {
+        if (hll.isEmpty()) {
+            return;
+        }
+        record.add(key, hll.estimate());
+        record.addBytes(key, hll.toByteArray());
+        hll.clear();
+    }
+}
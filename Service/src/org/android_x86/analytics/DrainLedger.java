@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import java.util.Arrays;
+
+/**
+ * Splits battery drain across foreground packages, the accounting of AppDrainAttribution.
+ *
+ * Each battery level drop while discharging is split across the packages in foreground with
+ * screen on since the previous level change, in proportion to their foreground time. The share
+ * of screen off time or unknown foreground stays unattributed. Only the running interval and
+ * per-day totals are kept, in primitive arrays indexed by interned package id.
+ *
+ * Not thread safe.
+ */
+class DrainLedger {
+    private final StringInterner mPackages;
+    // foreground time of the running interval
+    private final long[] mIntervalMillis;
+    // daily drain in percentage and foreground time while discharging
+    private final double[] mDrain;
+    private final long[] mDischargingMillis;
+    private double mTotalDrain;
+
+    private int mCurrent = -1;
+    private boolean mScreenOn = true;
+    private boolean mDischarging;
+    private long mSince;
+
+    // previous battery level in percentage and when it changes, -1 if unknown
+    private float mLevel = -1;
+    private long mLevelTime;
+
+    /**
+     * @param maxPackages max number of packages per day, others are not attributed
+     */
+    DrainLedger(int maxPackages) {
+        mPackages = new StringInterner(maxPackages);
+        mIntervalMillis = new long[maxPackages];
+        mDrain = new double[maxPackages];
+        mDischargingMillis = new long[maxPackages];
+    }
+
+    void onHitScreen(String packageName, long nowElapsed) {
+        accumulate(nowElapsed);
+        mCurrent = mPackages.intern(packageName);
+    }
+
+    void onScreenOn(long nowElapsed) {
+        accumulate(nowElapsed);
+        mScreenOn = true;
+    }
+
+    void onScreenOff(long nowElapsed) {
+        accumulate(nowElapsed);
+        mScreenOn = false;
+    }
+
+    /**
+     * @param level battery level in percentage, negative if unknown
+     */
+    void onBatteryChanged(float level, boolean charging, long nowElapsed) {
+        accumulate(nowElapsed);
+        boolean discharging = !charging && level >= 0;
+
+        if (mDischarging && discharging && mLevel >= 0 && level < mLevel) {
+            double drop = mLevel - level;
+            long interval = nowElapsed - mLevelTime;
+            mTotalDrain += drop;
+            for (int id = 0; id < mPackages.size(); id++) {
+                if (mIntervalMillis[id] > 0 && interval > 0) {
+                    mDrain[id] += drop * mIntervalMillis[id] / interval;
+                    mDischargingMillis[id] += mIntervalMillis[id];
+                }
+            }
+        }
+        if (!discharging || mLevel < 0 || level != mLevel) {
+            // start a new interval
+            Arrays.fill(mIntervalMillis, 0);
+            mLevel = discharging ? level : -1;
+            mLevelTime = nowElapsed;
+        }
+        mDischarging = discharging;
+    }
+
+    /**
+     * Counts foreground time until now.
+     */
+    void accumulate(long nowElapsed) {
+        if (mScreenOn && mDischarging && mCurrent != -1) {
+            mIntervalMillis[mCurrent] += nowElapsed - mSince;
+        }
+        mSince = nowElapsed;
+    }
+
+    /**
+     * Gets daily drain in percentage of all packages and unattributed.
+     */
+    double getTotalDrain() {
+        return mTotalDrain;
+    }
+
+    int size() {
+        return mPackages.size();
+    }
+
+    String getPackage(int id) {
+        return mPackages.get(id);
+    }
+
+    /**
+     * Gets daily drain of package in percentage.
+     */
+    double getDrain(int id) {
+        return mDrain[id];
+    }
+
+    /**
+     * Gets daily foreground time of package while discharging.
+     */
+    long getDischargingMillis(int id) {
+        return mDischargingMillis[id];
+    }
+
+    /**
+     * Starts a new day, the running interval is kept.
+     */
+    void newDay() {
+        String current = mCurrent != -1 ? mPackages.get(mCurrent) : null;
+        long[] intervalMillis = new long[mPackages.size()];
+        String[] intervalPackages = new String[mPackages.size()];
+        for (int id = 0; id < mPackages.size(); id++) {
+            intervalMillis[id] = mIntervalMillis[id];
+            intervalPackages[id] = mPackages.get(id);
+        }
+        mPackages.clear();
+        Arrays.fill(mIntervalMillis, 0);
+        Arrays.fill(mDrain, 0);
+        Arrays.fill(mDischargingMillis, 0);
+        mTotalDrain = 0;
+        for (int i = 0; i < intervalMillis.length; i++) {
+            if (intervalMillis[i] > 0) {
+                mIntervalMillis[mPackages.intern(intervalPackages[i])] = intervalMillis[i];
+            }
+        }
+        mCurrent = current != null ? mPackages.intern(current) : -1;
+    }
+}
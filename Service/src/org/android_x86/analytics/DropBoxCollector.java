@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.DropBoxManager;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Collects crashes, ANRs and native crashes recorded in DropBox, which apps do not report
+ * through AnalyticsHelper, into the same exception statistics.
+ *
+ * Entries of each collected tag after the persisted cursor of the tag are read in time order,
+ * at most MAX_ENTRIES_PER_RUN per run over all tags, so entries of other tags cost nothing.
+ * DropBoxManagerService gives every entry a unique timestamp, so the time of the last read
+ * entry is a cursor that neither skips nor repeats entries. Entries are parsed by
+ * DropBoxParser.
+ *
+ * Not thread safe, called on AnalyticsService's worker thread.
+ */
+class DropBoxCollector {
+    private static final String TAG = "DropBoxCollector";
+
+    private static final String SHARED_PREFS_KEY_CURSOR_PREFIX = "dropbox_cursor/";
+    private static final int MAX_ENTRIES_PER_RUN = 50;
+
+    private final Context mContext;
+    private final SharedPreferences mSharedPrefs;
+    private final HeavyHitters mHeavyHitters;
+    private final DistinctCounters mDistinctCounters;
+
+    DropBoxCollector(Context context, SharedPreferences sharedPrefs, HeavyHitters heavyHitters,
+            DistinctCounters distinctCounters) {
+        mContext = context;
+        mSharedPrefs = sharedPrefs;
+        mHeavyHitters = heavyHitters;
+        mDistinctCounters = distinctCounters;
+    }
+
+    static boolean isCollected(String tag) {
+        return DropBoxParser.isCollected(tag);
+    }
+
+    /**
+     * Collects entries since last run, within the read budget.
+     */
+    void collect() {
+        DropBoxManager dropBox =
+                (DropBoxManager) mContext.getSystemService(Context.DROPBOX_SERVICE);
+        if (dropBox == null) {
+            return;
+        }
+        SharedPreferences.Editor editor = mSharedPrefs.edit();
+        boolean changed = false;
+        int budget = MAX_ENTRIES_PER_RUN;
+        for (String tag : DropBoxParser.getTags()) {
+            String key = SHARED_PREFS_KEY_CURSOR_PREFIX + tag;
+            long cursor = mSharedPrefs.getLong(key, -1);
+            if (cursor == -1) {
+                // entries before the first run are not counted into today
+                editor.putLong(key, System.currentTimeMillis());
+                changed = true;
+                continue;
+            }
+            long start = cursor;
+            for (; budget > 0; budget--) {
+                DropBoxManager.Entry entry = dropBox.getNextEntry(tag, cursor);
+                if (entry == null) {
+                    break;
+                }
+                try {
+                    cursor = entry.getTimeMillis();
+                    collect(entry);
+                } finally {
+                    entry.close();
+                }
+            }
+            if (cursor != start) {
+                editor.putLong(key, cursor);
+                changed = true;
+            }
+        }
+        if (changed) {
+            editor.commit();
+        }
+    }
+
+    private void collect(DropBoxManager.Entry entry) {
+        String[] result;
+        BufferedReader reader = null;
+        try {
+            InputStream in = entry.getInputStream();
+            if (in == null) {
+                return;
+            }
+            reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            result = DropBoxParser.parse(entry.getTag(), reader);
+        } catch (IOException e) {
+            Log.w(TAG, "fail to read " + entry.getTag(), e);
+            return;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+        if (result != null) {
+            mHeavyHitters.onCrash(result[0], result[1]);
+            mDistinctCounters.onException(result[0]);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * Parses DropBox entries of crashes, ANRs and native crashes line by line: headers, then the
+ * stack trace of java crashes, or the signal and top frame of native crashes, at most
+ * MAX_CHARS_PER_ENTRY of each. Fingerprints are "{exception}@{frame}" as for reported
+ * exceptions, "ANR:{reason}" or "{signal}@{library}({function})".
+ */
+class DropBoxParser {
+    private static final int MAX_CHARS_PER_ENTRY = 16 * 1024;
+    private static final int MAX_SUBJECT_LENGTH = 100;
+    private static final String SYSTEM_SERVER_PACKAGE = "android";
+
+    private static final int KIND_CRASH = 0;
+    private static final int KIND_ANR = 1;
+    private static final int KIND_NATIVE_CRASH = 2;
+    private static final int KIND_WATCHDOG = 3;
+    private static final HashMap<String, Integer> KINDS = new HashMap<String, Integer>();
+    static {
+        KINDS.put("data_app_crash", KIND_CRASH);
+        KINDS.put("system_app_crash", KIND_CRASH);
+        KINDS.put("system_server_crash", KIND_CRASH);
+        KINDS.put("data_app_anr", KIND_ANR);
+        KINDS.put("system_app_anr", KIND_ANR);
+        KINDS.put("system_server_anr", KIND_ANR);
+        KINDS.put("data_app_native_crash", KIND_NATIVE_CRASH);
+        KINDS.put("system_app_native_crash", KIND_NATIVE_CRASH);
+        KINDS.put("SYSTEM_TOMBSTONE", KIND_NATIVE_CRASH);
+        KINDS.put("system_server_watchdog", KIND_WATCHDOG);
+    }
+
+    private static final String HEADER_PROCESS = "Process: ";
+    private static final String HEADER_PACKAGE = "Package: ";
+    private static final String HEADER_SUBJECT = "Subject: ";
+    // native crash lines, e.g. "pid: 123, tid: 123, name: foo  >>> /system/bin/foo <<<",
+    // "signal 11 (SIGSEGV), code 1 ..." and "    #00 pc 0001a2b4  /system/lib/libc.so (strlen+17)"
+    private static final String NATIVE_PROCESS_START = ">>> ";
+    private static final String NATIVE_PROCESS_END = " <<<";
+    private static final String NATIVE_SIGNAL = "signal ";
+    private static final String NATIVE_TOP_FRAME = "#00 pc ";
+    // frames of newer tombstones end with "(BuildId: ...)", also without a function
+    private static final String BUILD_ID = "BuildId: ";
+
+    private DropBoxParser() {
+    }
+
+    /**
+     * Gets tags of collected entries.
+     */
+    static Set<String> getTags() {
+        return KINDS.keySet();
+    }
+
+    static boolean isCollected(String tag) {
+        return KINDS.containsKey(tag);
+    }
+
+    /**
+     * Parses entry text of collected tag.
+     * @return {package, fingerprint}, or null if nothing to count
+     */
+    static String[] parse(String tag, BufferedReader reader) throws IOException {
+        Integer kindValue = KINDS.get(tag);
+        if (kindValue == null) {
+            return null;
+        }
+        int kind = kindValue;
+        String packageName = null;
+        String subject = null;
+        String nativeProcess = null;
+        String signal = null;
+        String frame = null;
+        StringBuilder body = new StringBuilder();
+
+        boolean inHeaders = true;
+        int chars = 0;
+        String line;
+        while (chars < MAX_CHARS_PER_ENTRY && (line = reader.readLine()) != null) {
+            chars += line.length() + 1;
+            if (inHeaders) {
+                if (line.isEmpty()) {
+                    inHeaders = false;
+                } else if (line.startsWith(HEADER_PACKAGE)) {
+                    // "Package: com.example v12 (1.2)"
+                    packageName = firstToken(line, HEADER_PACKAGE.length());
+                } else if (line.startsWith(HEADER_PROCESS) && packageName == null) {
+                    packageName = firstToken(line, HEADER_PROCESS.length());
+                } else if (line.startsWith(HEADER_SUBJECT)) {
+                    subject = line.substring(HEADER_SUBJECT.length());
+                }
+                // tombstones have no headers
+                if (kind != KIND_NATIVE_CRASH) {
+                    continue;
+                }
+            }
+            if (kind == KIND_CRASH) {
+                body.append(line).append('\n');
+            } else if (kind == KIND_NATIVE_CRASH) {
+                if (nativeProcess == null && line.contains(NATIVE_PROCESS_START)) {
+                    nativeProcess = between(line, NATIVE_PROCESS_START, NATIVE_PROCESS_END);
+                } else if (signal == null && line.startsWith(NATIVE_SIGNAL)) {
+                    signal = between(line, "(", ")");
+                } else if (frame == null && line.contains(NATIVE_TOP_FRAME)) {
+                    frame = parseNativeFrame(line);
+                    break;
+                }
+            } else {
+                // ANR and watchdog need headers only
+                break;
+            }
+        }
+
+        if (tag.startsWith("system_server")) {
+            packageName = SYSTEM_SERVER_PACKAGE;
+        } else if (packageName == null) {
+            packageName = nativeProcess;
+        }
+        String fingerprint;
+        switch (kind) {
+            case KIND_CRASH:
+                if (body.length() == 0) {
+                    return null;
+                }
+                fingerprint = ExceptionFingerprint.of(body.toString());
+                break;
+            case KIND_ANR:
+                fingerprint = "ANR:" + getReason(subject);
+                break;
+            case KIND_NATIVE_CRASH:
+                fingerprint = (signal != null ? signal : "signal")
+                        + "@" + (frame != null ? frame : "unknown");
+                break;
+            default:
+                fingerprint = "watchdog:" + getReason(subject);
+                break;
+        }
+        return new String[] {packageName, fingerprint};
+    }
+
+    /**
+     * Gets reason of ANR or watchdog subject without variable details, e.g. "Input dispatching
+     * timed out" of "Input dispatching timed out (Waiting to send ...)".
+     */
+    static String getReason(String subject) {
+        if (subject == null) {
+            return "unknown";
+        }
+        int end = subject.length();
+        int paren = subject.indexOf(" (");
+        if (paren != -1) {
+            end = paren;
+        }
+        int brace = subject.indexOf(" {");
+        if (brace != -1 && brace < end) {
+            end = brace;
+        }
+        return subject.substring(0, Math.min(end, MAX_SUBJECT_LENGTH));
+    }
+
+    /**
+     * Gets "libc.so(strlen)" of "    #00 pc 0001a2b4  /system/lib/libc.so (strlen+17)".
+     */
+    static String parseNativeFrame(String line) {
+        int start = line.indexOf(NATIVE_TOP_FRAME) + NATIVE_TOP_FRAME.length();
+        // skip pc
+        while (start < line.length() && line.charAt(start) != ' ') {
+            start++;
+        }
+        String rest = line.substring(start).trim();
+        int space = rest.indexOf(' ');
+        String path = space != -1 ? rest.substring(0, space) : rest;
+        String library = path.substring(path.lastIndexOf('/') + 1);
+        String function = space != -1 ? parenthesized(rest, space) : null;
+        if (function == null || function.startsWith(BUILD_ID)) {
+            return library;
+        }
+        int offset = function.lastIndexOf('+');
+        return library + "(" + (offset != -1 ? function.substring(0, offset) : function) + ")";
+    }
+
+    /**
+     * Gets text of the first balanced parentheses from start, e.g. "Foo::bar()+32" of
+     * " (Foo::bar()+32) (BuildId: ...)".
+     */
+    private static String parenthesized(String s, int start) {
+        int open = s.indexOf('(', start);
+        if (open == -1) {
+            return null;
+        }
+        int depth = 0;
+        for (int i = open; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return s.substring(open + 1, i);
+            }
+        }
+        return null;
+    }
+
+    private static String firstToken(String line, int start) {
+        int end = line.indexOf(' ', start);
+        return line.substring(start, end != -1 ? end : line.length());
+    }
+
+    private static String between(String line, String start, String end) {
+        int i = line.indexOf(start);
+        if (i == -1) {
+            return null;
+        }
+        i += start.length();
+        int j = line.indexOf(end, i);
+        return j != -1 ? line.substring(i, j) : null;
+    }
+}
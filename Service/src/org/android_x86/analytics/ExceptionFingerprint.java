@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+/**
+ * Builds a stable fingerprint of exception stack trace, without messages which usually contain
+ * variable data: {exception class}@{top frame}[<{root cause class}]
+ */
+class ExceptionFingerprint {
+    private static final String FRAME_PREFIX = "at ";
+    private static final String CAUSED_BY_PREFIX = "Caused by: ";
+    private static final int MAX_LENGTH = 200;
+
+    private ExceptionFingerprint() {
+    }
+
+    /**
+     * Gets fingerprint of stack trace from Throwable.printStackTrace().
+     */
+    static String of(String stackTrace) {
+        int lineEnd = indexOfLineEnd(stackTrace, 0);
+        StringBuilder sb = new StringBuilder();
+        appendClassName(sb, stackTrace, 0, lineEnd);
+
+        String rootCause = null;
+        boolean hasFrame = false;
+        int start = lineEnd + 1;
+        while (start < stackTrace.length()) {
+            int end = indexOfLineEnd(stackTrace, start);
+            int i = skipWhitespace(stackTrace, start, end);
+            if (!hasFrame && stackTrace.startsWith(FRAME_PREFIX, i)) {
+                sb.append('@');
+                appendFrame(sb, stackTrace, i + FRAME_PREFIX.length(), end);
+                hasFrame = true;
+            } else if (stackTrace.startsWith(CAUSED_BY_PREFIX, i)) {
+                StringBuilder cause = new StringBuilder();
+                appendClassName(cause, stackTrace, i + CAUSED_BY_PREFIX.length(), end);
+                rootCause = cause.toString();
+            }
+            start = end + 1;
+        }
+        if (rootCause != null) {
+            sb.append('<').append(rootCause);
+        }
+        if (sb.length() > MAX_LENGTH) {
+            sb.setLength(MAX_LENGTH);
+        }
+        return sb.toString();
+    }
+
+    private static int indexOfLineEnd(String s, int start) {
+        int end = s.indexOf('\n', start);
+        return end == -1 ? s.length() : end;
+    }
+
+    private static int skipWhitespace(String s, int start, int end) {
+        while (start < end && Character.isWhitespace(s.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Appends "java.lang.Exception" of "java.lang.Exception: message".
+     */
+    private static void appendClassName(StringBuilder sb, String s, int start, int end) {
+        for (int i = skipWhitespace(s, start, end); i < end; i++) {
+            char c = s.charAt(i);
+            if (c == ':' || Character.isWhitespace(c)) {
+                break;
+            }
+            sb.append(c);
+        }
+    }
+
+    /**
+     * Appends "a.b.C.method" of "a.b.C.method(C.java:123)".
+     */
+    private static void appendFrame(StringBuilder sb, String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == '(') {
+                break;
+            }
+            sb.append(c);
+        }
+    }
+}
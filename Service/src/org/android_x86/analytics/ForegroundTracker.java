@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import android.content.ComponentName;
+
+import java.util.HashMap;
+
+/**
+ * Tracks the foreground activity from hit screen events.
+ *
+ * Updated on AnalyticsService's worker thread, read from binder threads. The current component
+ * is a volatile reference, per-package foreground time is accumulated on every switch so reads
+ * never scan any history.
+ */
+class ForegroundTracker {
+
+    private volatile ComponentName mForeground;
+
+    // guarded by this
+    private final HashMap<String, long[]> mForegroundMillis = new HashMap<String, long[]>();
+    private boolean mScreenOn = true;
+    // elapsedRealtime when mForeground becomes visible, valid when mScreenOn
+    private long mForegroundSince;
+
+    /**
+     * Gets the last hit screen or null if unknown.
+     */
+    ComponentName getForeground() {
+        return mForeground;
+    }
+
+    /**
+     * Gets package name of the last hit screen or null if unknown.
+     */
+    String getForegroundPackageName() {
+        ComponentName foreground = mForeground;
+        return foreground != null ? foreground.getPackageName() : null;
+    }
+
+    /**
+     * Gets foreground time of package, including the running foreground period.
+     */
+    synchronized long getForegroundTimeMillis(String packageName, long nowElapsed) {
+        long[] total = mForegroundMillis.get(packageName);
+        long millis = total != null ? total[0] : 0;
+        ComponentName foreground = mForeground;
+        if (mScreenOn && foreground != null
+                && foreground.getPackageName().equals(packageName)) {
+            millis += nowElapsed - mForegroundSince;
+        }
+        return millis;
+    }
+
+    synchronized void onHitScreen(ComponentName component, long nowElapsed) {
+        accumulate(nowElapsed);
+        mForeground = component;
+    }
+
+    synchronized void onScreenOn(long nowElapsed) {
+        if (!mScreenOn) {
+            mScreenOn = true;
+            mForegroundSince = nowElapsed;
+        }
+    }
+
+    synchronized void onScreenOff(long nowElapsed) {
+        if (mScreenOn) {
+            accumulate(nowElapsed);
+            mScreenOn = false;
+        }
+    }
+
+    private void accumulate(long nowElapsed) {
+        ComponentName foreground = mForeground;
+        if (mScreenOn && foreground != null) {
+            String packageName = foreground.getPackageName();
+            long[] total = mForegroundMillis.get(packageName);
+            if (total == null) {
+                total = new long[1];
+                mForegroundMillis.put(packageName, total);
+            }
+            total[0] += nowElapsed - mForegroundSince;
+        }
+        mForegroundSince = nowElapsed;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import android.content.ComponentName;
+
+/**
+ * Daily top screens, exception fingerprints and custom events, counted by fixed memory
+ * Space-Saving sketches.
+ *
+ * Not thread safe, called on AnalyticsService's worker thread.
+ */
+class HeavyHitters implements DailyReport {
+    private static final String EVENT_CATEGORY_TOP = "top";
+    private static final String EVENT_ACTION_SCREENS = "screens";
+    private static final String EVENT_ACTION_EXCEPTIONS = "exceptions";
+    private static final String EVENT_ACTION_EVENTS = "events";
+    private static final String KEY_TOTAL = "total";
+
+    private static final int MAX_SCREENS = 300;
+    private static final int MAX_EXCEPTIONS = 100;
+    private static final int MAX_EVENTS = 300;
+    private static final int MAX_EVENT_KEY_LENGTH = 160;
+
+    private final SpaceSavingSketch mScreens = new SpaceSavingSketch(MAX_SCREENS);
+    private final SpaceSavingSketch mExceptions = new SpaceSavingSketch(MAX_EXCEPTIONS);
+    private final SpaceSavingSketch mEvents = new SpaceSavingSketch(MAX_EVENTS);
+
+    void onHitScreen(ComponentName component) {
+        mScreens.offer(component.flattenToShortString());
+    }
+
+    /**
+     * @param packageName package reports the exception, may be null
+     * @param stackTrace stack trace without thread name
+     */
+    void onException(String packageName, String stackTrace) {
+        onCrash(packageName, ExceptionFingerprint.of(stackTrace));
+    }
+
+    /**
+     * @param packageName package crashes, may be null
+     * @param fingerprint fingerprint of crash, e.g. from ExceptionFingerprint
+     */
+    void onCrash(String packageName, String fingerprint) {
+        mExceptions.offer(packageName + " " + fingerprint);
+    }
+
+    void onCustomEvent(String category, String action, String label) {
+        StringBuilder key = new StringBuilder()
+                .append(category).append('/').append(action);
+        if (label != null) {
+            key.append('/').append(label);
+        }
+        if (key.length() > MAX_EVENT_KEY_LENGTH) {
+            key.setLength(MAX_EVENT_KEY_LENGTH);
+        }
+        mEvents.offer(key.toString());
+    }
+
+    @Override
+    public void report(LogHelper logHelper, long nowElapsed) {
+        report(logHelper, mScreens, EVENT_ACTION_SCREENS);
+        report(logHelper, mExceptions, EVENT_ACTION_EXCEPTIONS);
+        report(logHelper, mEvents, EVENT_ACTION_EVENTS);
+    }
+
+    private static void report(LogHelper logHelper, SpaceSavingSketch sketch, String action) {
+        if (sketch.isEmpty()) {
+            return;
+        }
+        CompactRecord record = new CompactRecord(EVENT_CATEGORY_TOP, action);
+        record.addSketch(KEY_TOTAL, sketch);
+        record.send(logHelper);
+        sketch.clear();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Daily histograms by key, e.g. durations, custom event histograms and power usage.
+ *
+ * Each histogram is uploaded as "{key}:count,p50,p90,p99,max" followed by its serialized buckets
+ * in base64, so the backend can merge them and compute any percentile.
+ *
+ * Not thread safe, called on AnalyticsService's worker thread.
+ */
+class HistogramStore implements DailyReport {
+    private static final String TAG = "HistogramStore";
+
+    private static final String EVENT_CATEGORY_HISTOGRAM = "histogram";
+    private static final String EVENT_ACTION_DAILY = "daily";
+
+    private static final int MAX_HISTOGRAMS = 64;
+    // ~6% relative error up to 2^40
+    static final int SUB_BUCKET_BITS = 4;
+    static final long MAX_VALUE = 1L << 40;
+
+    private final LinkedHashMap<String, LogLinearHistogram> mHistograms =
+            new LinkedHashMap<String, LogLinearHistogram>();
+
+    /**
+     * Records value into histogram with default parameters.
+     */
+    void record(String key, long value) {
+        LogLinearHistogram histogram = mHistograms.get(key);
+        if (histogram == null) {
+            if (mHistograms.size() >= MAX_HISTOGRAMS) {
+                Log.w(TAG, "too many histograms, drop " + key);
+                return;
+            }
+            histogram = new LogLinearHistogram(SUB_BUCKET_BITS, MAX_VALUE);
+            mHistograms.put(key, histogram);
+        }
+        histogram.record(value);
+    }
+
+    /**
+     * Merges histogram, which is not retained.
+     */
+    void merge(String key, LogLinearHistogram other) {
+        LogLinearHistogram histogram = mHistograms.get(key);
+        try {
+            if (histogram == null) {
+                if (mHistograms.size() >= MAX_HISTOGRAMS) {
+                    Log.w(TAG, "too many histograms, drop " + key);
+                    return;
+                }
+                mHistograms.put(key, new LogLinearHistogram(other));
+            } else {
+                histogram.merge(other);
+            }
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "fail to merge " + key, e);
+        }
+    }
+
+    @Override
+    public void report(LogHelper logHelper, long nowElapsed) {
+        if (mHistograms.isEmpty()) {
+            return;
+        }
+        CompactRecord record = new CompactRecord(EVENT_CATEGORY_HISTOGRAM, EVENT_ACTION_DAILY);
+        for (Map.Entry<String, LogLinearHistogram> e : mHistograms.entrySet()) {
+            LogLinearHistogram histogram = e.getValue();
+            record.add(e.getKey(),
+                    histogram.getTotalCount(),
+                    histogram.getValueAtPercentile(50),
+                    histogram.getValueAtPercentile(90),
+                    histogram.getValueAtPercentile(99),
+                    histogram.getMaxValue());
+            record.addBytes(e.getKey(), histogram.toByteArray());
+        }
+        record.send(logHelper);
+        mHistograms.clear();
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import java.util.Arrays;
+
+/**
+ * HyperLogLog distinct counter.
+ *
+ * Uses 2^precision registers of 6 bits, standard error is 1.04 / sqrt(2^precision). Registers
+ * of counters with same precision can be merged by max, so the backend can count distinct
+ * values across devices without seeing them.
+ *
+ * Not thread safe.
+ */
+class HyperLogLog {
+    private static final int BITS_PER_REGISTER = 6;
+
+    private final int mPrecision;
+    private final byte[] mRegisters;
+
+    HyperLogLog(int precision) {
+        mPrecision = precision;
+        mRegisters = new byte[1 << precision];
+    }
+
+    void offer(String value) {
+        offerHash(hash(value));
+    }
+
+    void offerHash(long hash) {
+        int index = (int) (hash >>> (64 - mPrecision));
+        // position of the first 1 bit in the remaining bits, starting from 1
+        long rest = (hash << mPrecision) | (1L << (mPrecision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > mRegisters[index]) {
+            mRegisters[index] = rank;
+        }
+    }
+
+    void merge(HyperLogLog other) {
+        if (other.mPrecision != mPrecision) {
+            throw new IllegalArgumentException("precision mismatch: "
+                    + mPrecision + " != " + other.mPrecision);
+        }
+        for (int i = 0; i < mRegisters.length; i++) {
+            if (other.mRegisters[i] > mRegisters[i]) {
+                mRegisters[i] = other.mRegisters[i];
+            }
+        }
+    }
+
+    long estimate() {
+        int m = mRegisters.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : mRegisters) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // linear counting for small cardinalities
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    boolean isEmpty() {
+        for (byte register : mRegisters) {
+            if (register != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void clear() {
+        Arrays.fill(mRegisters, (byte) 0);
+    }
+
+    /**
+     * Serializes as precision byte followed by registers packed in 6 bits big-endian.
+     */
+    byte[] toByteArray() {
+        byte[] out = new byte[1 + (mRegisters.length * BITS_PER_REGISTER + 7) / 8];
+        out[0] = (byte) mPrecision;
+        int bit = 8;
+        for (byte register : mRegisters) {
+            for (int i = BITS_PER_REGISTER - 1; i >= 0; i--, bit++) {
+                if ((register & (1 << i)) != 0) {
+                    out[bit >> 3] |= 0x80 >>> (bit & 7);
+                }
+            }
+        }
+        return out;
+    }
+
+    static HyperLogLog fromByteArray(byte[] data) {
+        HyperLogLog hll = new HyperLogLog(data[0]);
+        int bit = 8;
+        for (int r = 0; r < hll.mRegisters.length; r++) {
+            int register = 0;
+            for (int i = 0; i < BITS_PER_REGISTER; i++, bit++) {
+                register = (register << 1) | ((data[bit >> 3] >>> (7 - (bit & 7))) & 1);
+            }
+            hll.mRegisters[r] = (byte) register;
+        }
+        return hll;
+    }
+
+    /**
+     * 64 bits FNV-1a of chars, finalized by MurmurHash3 fmix64.
+     */
+    static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -113,6 +113,14 @@ public abstract class ImmortalIntentService extends Service {
         mServiceLooper.quit();
     }
 
+    /**
+     * Gets handler of the worker thread, e.g. to post delayed work which runs serialized with
+     * {@link #onHandleIntent}. Valid after {@link #onCreate}.
+     */
+    protected final Handler getHandler() {
+        return mServiceHandler;
+    }
+
     /**
      * Unless you provide binding for your service, you don't need to implement this
      * method, because the default implementation returns null.
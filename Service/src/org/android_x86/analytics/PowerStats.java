@@ -17,55 +17,104 @@ package org.android_x86.analytics;
 
 import android.content.Context;
 import android.os.SystemClock;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Battery discharge rate statistics.
+ *
+ * Keeps a ring buffer of (elapsedRealtime, level, screen, charging) samples, fed by battery
+ * level changes and screen on/off, and persisted across process restarts when a segment starts
+ * and at most every SAVE_INTERVAL_MILLIS within a segment. A segment is a run of samples with
+ * same screen state while discharging, its discharge rate is the least-squares slope of level
+ * over time, computed incrementally. Rates of segments longer than MIN_STATS_INTERVAL_MILLIS are
+ * recorded into daily histograms.
+ *
+ * Not thread safe, called on AnalyticsService's worker thread.
+ */
+class PowerStats {
+    private static final String TAG = "PowerStats";
 
-public class PowerStats {
     private static final long MIN_STATS_INTERVAL_MILLIS = 15 * 60 * 1000;
-    private static final long TEN_HOUR_MILLIS = 10 * 60 * 60 * 1000;
+    private static final double TEN_HOUR_MILLIS = 10 * 60 * 60 * 1000;
 
-    private static final String EVENT_CATEGORY_POWER_USAGE = "power_usage";
-    private static final String ACTION_DISCHARGE_SCREEN_ON = "discharge_screen_on";
-    private static final String ACTION_DISCHARGE_SCREEN_OFF = "discharge_screen_off";
+    // same keys as the former discharge custom events
+    private static final String HISTOGRAM_DISCHARGE_SCREEN_ON =
+            "system:power_usage/discharge_screen_on";
+    private static final String HISTOGRAM_DISCHARGE_SCREEN_OFF =
+            "system:power_usage/discharge_screen_off";
 
-    private final boolean mIsScreenOn;
-    private final boolean mIsCharging;
-    private final long mTime;
-    private final float mPercentage;
+    private static final String SAMPLES_FILE_NAME = "power_samples.bin";
+    private static final int SAMPLES_FILE_VERSION = 1;
+    private static final int CAPACITY = 256;
+    // samples since last save are lost if the process is killed
+    private static final long SAVE_INTERVAL_MILLIS = 10 * 60 * 1000;
+    // max difference of boot time computed at different moments in the same boot
+    private static final long BOOT_TIME_TOLERANCE_MILLIS = 60 * 1000;
 
-    private static PowerStats mPowerStats;
+    private static final int FLAG_SCREEN_ON = 1;
+    private static final int FLAG_CHARGING = 2;
+    private static final int PERMILLE = 1000;
 
-    private PowerStats(boolean isScreenOn, boolean isCharging, long time, float percentage) {
-        mIsScreenOn = isScreenOn;
-        mIsCharging = isCharging;
-        mTime = time;
-        mPercentage = percentage;
-    }
+    private final BatteryTracker mBatteryTracker;
+    private final HistogramStore mHistogramStore;
+    private final AtomicFile mSamplesFile;
+
+    // ring buffer of samples
+    private final long[] mTimes = new long[CAPACITY];
+    private final short[] mLevels = new short[CAPACITY];
+    private final byte[] mFlags = new byte[CAPACITY];
+    private int mHead;
+    private int mSize;
+    private long mLastSaveTime;
+
+    private boolean mScreenOn;
 
-    @Override
-    public String toString() {
-        return "isScreenOn: " + mIsScreenOn
-                + " isCharging: " + mIsCharging
-                + " time: " +  mTime
-                + " percentage: " + mPercentage;
+    // least-squares sums of current segment, time in 10 hours relative to segment start
+    private long mSegmentStart;
+    private int mSegmentFlags = -1;
+    private int mCount;
+    private double mSumT;
+    private double mSumL;
+    private double mSumTT;
+    private double mSumTL;
+
+    PowerStats(Context context, HistogramStore histogramStore) {
+        mBatteryTracker = BatteryTracker.getInstance(context);
+        mHistogramStore = histogramStore;
+        mSamplesFile = new AtomicFile(new File(context.getFilesDir(), SAMPLES_FILE_NAME));
+        mScreenOn = Util.isScreenOn(context);
+        load();
     }
 
-    public static void onScreenOn(Context context) {
-        onIntent(context, true, null);
+    void onBatteryChanged(BatteryState state) {
+        addSample(state);
     }
 
-    public static void onScreenOff(Context context) {
-        onIntent(context, false, null);
+    void onScreenOn() {
+        mScreenOn = true;
+        addSample(mBatteryTracker.getState());
     }
 
-    public static void onPowerConnected(Context context) {
-        onIntent(context, null, true);
+    void onScreenOff() {
+        mScreenOn = false;
+        addSample(mBatteryTracker.getState());
     }
 
-    public static void onPowerDisconnected(Context context) {
-        onIntent(context, null, false);
+    void onShutdown() {
+        addSample(mBatteryTracker.getState());
+        closeSegment();
+        mSamplesFile.delete();
     }
 
-    private static void onIntent(Context context, Boolean isScreenOn, Boolean isCharging) {
-        BatteryState state = BatteryState.of(context);
+    private void addSample(BatteryState state) {
         if (state == null) {
             return;
         }
@@ -73,42 +122,158 @@ public class PowerStats {
         if (percentage < 0) {
             return;
         }
-        new PowerStats(
-                isScreenOn != null ? isScreenOn : Util.isScreenOn(context),
-                isCharging != null ? isCharging : state.isCharging(),
-                SystemClock.elapsedRealtime(),
-                percentage)
-        .handle(context);
+        int flags = (mScreenOn ? FLAG_SCREEN_ON : 0) | (state.isCharging() ? FLAG_CHARGING : 0);
+        long now = SystemClock.elapsedRealtime();
+        int level = (int) (percentage * PERMILLE / 100);
+
+        int tail = (mHead + mSize - 1) % CAPACITY;
+        if (mSize > 0 && mFlags[tail] == flags && mLevels[tail] == level) {
+            return;
+        }
+        int index = (mHead + mSize) % CAPACITY;
+        if (mSize == CAPACITY) {
+            mHead = (mHead + 1) % CAPACITY;
+        } else {
+            mSize++;
+        }
+        mTimes[index] = now;
+        mLevels[index] = (short) level;
+        mFlags[index] = (byte) flags;
+
+        boolean segmentStarted = flags != mSegmentFlags;
+        accumulate(now, level, flags);
+        if (segmentStarted || now - mLastSaveTime >= SAVE_INTERVAL_MILLIS) {
+            save();
+            mLastSaveTime = now;
+        }
+    }
+
+    private void accumulate(long time, int level, int flags) {
+        if (flags != mSegmentFlags) {
+            // the boundary sample ends the previous segment and starts the new one
+            if (mSegmentFlags != -1) {
+                addToSegment(time, level);
+            }
+            closeSegment();
+            mSegmentFlags = flags;
+            mSegmentStart = time;
+        }
+        addToSegment(time, level);
+    }
+
+    private void addToSegment(long time, int level) {
+        double t = (time - mSegmentStart) / TEN_HOUR_MILLIS;
+        double l = level / (double) (PERMILLE / 100);
+        mCount++;
+        mSumT += t;
+        mSumL += l;
+        mSumTT += t * t;
+        mSumTL += t * l;
+    }
+
+    /**
+     * Records discharge rate of current segment and resets it.
+     */
+    private void closeSegment() {
+        double denominator = mCount * mSumTT - mSumT * mSumT;
+        long interval = getLastTime() - mSegmentStart;
+        if (mSegmentFlags != -1 && (mSegmentFlags & FLAG_CHARGING) == 0
+                && mCount >= 2 && interval > MIN_STATS_INTERVAL_MILLIS && denominator > 0) {
+            // slope in percentage per 10 hours, positive when discharging
+            double slope = (mCount * mSumTL - mSumT * mSumL) / denominator;
+            if (slope <= 0) {
+                mHistogramStore.record((mSegmentFlags & FLAG_SCREEN_ON) != 0
+                        ? HISTOGRAM_DISCHARGE_SCREEN_ON : HISTOGRAM_DISCHARGE_SCREEN_OFF,
+                        Math.round(-slope));
+            }
+        }
+        mSegmentFlags = -1;
+        mCount = 0;
+        mSumT = 0;
+        mSumL = 0;
+        mSumTT = 0;
+        mSumTL = 0;
     }
 
-    private void handle(Context context) {
-        PowerStats previous;
-        synchronized(PowerStats.class) {
-            previous = mPowerStats;
-            // only save battery percentage when screen on/off or charging status change.
-            if (previous != null
-                    && (mIsScreenOn == previous.mIsScreenOn)
-                    && (mIsCharging == previous.mIsCharging)) {
+    private long getLastTime() {
+        return mSize > 0 ? mTimes[(mHead + mSize - 1) % CAPACITY] : mSegmentStart;
+    }
+
+    private static long getBootTime() {
+        return System.currentTimeMillis() - SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Loads samples saved in the same boot and rebuilds the trailing segment.
+     */
+    private void load() {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(mSamplesFile.openRead());
+            if (in.readInt() != SAMPLES_FILE_VERSION
+                    || Math.abs(in.readLong() - getBootTime()) > BOOT_TIME_TOLERANCE_MILLIS) {
                 return;
             }
-            mPowerStats = this;
+            int size = Math.min(in.readInt(), CAPACITY);
+            for (int i = 0; i < size; i++) {
+                mTimes[i] = in.readLong();
+                mLevels[i] = in.readShort();
+                mFlags[i] = in.readByte();
+            }
+            mHead = 0;
+            mSize = size;
+        } catch (FileNotFoundException e) {
+            return;
+        } catch (IOException e) {
+            Log.w(TAG, "fail to load samples", e);
+            mSize = 0;
+            return;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
         }
-        if (previous == null) {
+
+        if (mSize == 0) {
             return;
         }
-        long interval = mTime - previous.mTime;
-        float percentageReduce = previous.mPercentage - mPercentage;
-        if (interval > MIN_STATS_INTERVAL_MILLIS
-                && percentageReduce >= 0
-                && !previous.mIsCharging) {
-            long value = (long) (percentageReduce * TEN_HOUR_MILLIS / interval);
-            AnalyticsHelper.newSystemCoreEvent(context,
-                    EVENT_CATEGORY_POWER_USAGE,
-                    previous.mIsScreenOn ? ACTION_DISCHARGE_SCREEN_ON
-                                         : ACTION_DISCHARGE_SCREEN_OFF)
-                .setLabel(Long.toString(value))
-                .setValue(value)
-                .sendWithSampling();
+        // the trailing segment starts at its first sample, as in accumulate()
+        int start = mSize - 1;
+        while (start > 0 && mFlags[start - 1] == mFlags[mSize - 1]) {
+            start--;
+        }
+        mSegmentFlags = mFlags[mSize - 1];
+        mSegmentStart = mTimes[start];
+        for (int i = start; i < mSize; i++) {
+            addToSegment(mTimes[i], mLevels[i]);
+        }
+    }
+
+    private void save() {
+        FileOutputStream out = null;
+        try {
+            out = mSamplesFile.startWrite();
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(SAMPLES_FILE_VERSION);
+            data.writeLong(getBootTime());
+            data.writeInt(mSize);
+            for (int i = 0; i < mSize; i++) {
+                int index = (mHead + i) % CAPACITY;
+                data.writeLong(mTimes[index]);
+                data.writeShort(mLevels[index]);
+                data.writeByte(mFlags[index]);
+            }
+            data.flush();
+            mSamplesFile.finishWrite(out);
+        } catch (IOException e) {
+            Log.w(TAG, "fail to save samples", e);
+            if (out != null) {
+                mSamplesFile.failWrite(out);
+            }
         }
     }
 }
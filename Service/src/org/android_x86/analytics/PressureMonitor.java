@@ -0,0 +1,227 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import android.os.SystemClock;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructPollfd;
+import android.util.Log;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Detects stall episodes of memory, cpu and io by PSI triggers.
+ *
+ * Registers a trigger on each /proc/pressure file and blocks in poll() on its own thread, so it
+ * costs nothing until the kernel reports a stall. Consecutive trigger events form an episode,
+ * which ends when no event comes for EPISODE_GAP_MILLIS. Does nothing on kernels without PSI or
+ * if triggers are not permitted.
+ */
+class PressureMonitor extends Thread {
+    private static final String TAG = "PressureMonitor";
+
+    static final String[] RESOURCES = {"memory", "cpu", "io"};
+    private static final String PRESSURE_DIR = "/proc/pressure/";
+
+    // 150ms of partial stall in 2s window, unprivileged triggers need a multiple of 2s window
+    private static final long WINDOW_MILLIS = 2000;
+    private static final String TRIGGER = "some 150000 " + (WINDOW_MILLIS * 1000);
+    // an episode ends if no event in next two windows
+    private static final long EPISODE_GAP_MILLIS = 2 * WINDOW_MILLIS;
+
+    interface Callback {
+        /**
+         * Called on monitor thread when a stall episode ends.
+         * @param resource one of RESOURCES
+         * @param avg10Centi max "some avg10" during the episode, in 0.01%
+         * @param foregroundPackage package in foreground when episode starts, may be null
+         */
+        void onStallEpisode(String resource, long startElapsed, long durationMillis,
+                long avg10Centi, String foregroundPackage);
+    }
+
+    private final ForegroundTracker mForegroundTracker;
+    private final Callback mCallback;
+    private final ProcFileReader mReader = new ProcFileReader(256, 1024);
+
+    // monitored resources, and their current episodes, start is 0 if none
+    private final List<String> mResources = new ArrayList<String>();
+    private final List<FileDescriptor> mFds = new ArrayList<FileDescriptor>();
+    private long[] mStarts;
+    private long[] mLastEvents;
+    private long[] mMaxAvg10s;
+    private String[] mPackages;
+
+    PressureMonitor(ForegroundTracker foregroundTracker, Callback callback) {
+        super(TAG);
+        setDaemon(true);
+        mForegroundTracker = foregroundTracker;
+        mCallback = callback;
+    }
+
+    @Override
+    public void run() {
+        for (String resource : RESOURCES) {
+            FileDescriptor fd = openTrigger(PRESSURE_DIR + resource);
+            if (fd != null) {
+                mResources.add(resource);
+                mFds.add(fd);
+            }
+        }
+        int n = mFds.size();
+        if (n == 0) {
+            Log.i(TAG, "PSI triggers not available");
+            return;
+        }
+        mStarts = new long[n];
+        mLastEvents = new long[n];
+        mMaxAvg10s = new long[n];
+        mPackages = new String[n];
+        StructPollfd[] pollFds = new StructPollfd[n];
+        for (int i = 0; i < n; i++) {
+            pollFds[i] = new StructPollfd();
+            pollFds[i].fd = mFds.get(i);
+            pollFds[i].events = (short) OsConstants.POLLPRI;
+        }
+
+        boolean running = true;
+        while (running) {
+            try {
+                Os.poll(pollFds, getPollTimeout());
+            } catch (ErrnoException e) {
+                if (e.errno == OsConstants.EINTR) {
+                    continue;
+                }
+                Log.e(TAG, "poll failed, stop", e);
+                break;
+            }
+            long now = SystemClock.elapsedRealtime();
+            for (int i = 0; i < n; i++) {
+                short revents = pollFds[i].revents;
+                pollFds[i].revents = 0;
+                if ((revents & OsConstants.POLLERR) != 0) {
+                    // trigger is destroyed, e.g. by cgroup removal
+                    Log.w(TAG, "trigger error of " + mResources.get(i) + ", stop");
+                    running = false;
+                } else if ((revents & OsConstants.POLLPRI) != 0) {
+                    onEvent(i, now);
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                if (mStarts[i] != 0
+                        && (!running || now - mLastEvents[i] >= EPISODE_GAP_MILLIS)) {
+                    endEpisode(i);
+                }
+            }
+        }
+        for (FileDescriptor fd : mFds) {
+            closeQuietly(fd);
+        }
+    }
+
+    /**
+     * Gets milliseconds until the earliest episode may end, or -1 to wait forever.
+     */
+    private int getPollTimeout() {
+        long now = SystemClock.elapsedRealtime();
+        long timeout = -1;
+        for (int i = 0; i < mStarts.length; i++) {
+            if (mStarts[i] != 0) {
+                long remaining = Math.max(mLastEvents[i] + EPISODE_GAP_MILLIS - now, 0);
+                timeout = timeout < 0 ? remaining : Math.min(timeout, remaining);
+            }
+        }
+        return (int) timeout;
+    }
+
+    private void onEvent(int i, long now) {
+        if (mStarts[i] == 0) {
+            mStarts[i] = now;
+            mMaxAvg10s[i] = 0;
+            mPackages[i] = mForegroundTracker.getForegroundPackageName();
+        }
+        mLastEvents[i] = now;
+        mMaxAvg10s[i] = Math.max(mMaxAvg10s[i], readAvg10(PRESSURE_DIR + mResources.get(i)));
+    }
+
+    private void endEpisode(int i) {
+        if (mStarts[i] == 0) {
+            return;
+        }
+        // the last event reports stall in the window before it
+        long duration = mLastEvents[i] - mStarts[i] + WINDOW_MILLIS;
+        mCallback.onStallEpisode(mResources.get(i), mStarts[i], duration, mMaxAvg10s[i],
+                mPackages[i]);
+        mStarts[i] = 0;
+        mPackages[i] = null;
+    }
+
+    /**
+     * Reads "some avg10" in 0.01%, e.g. 1234 of "some avg10=12.34 avg60=...".
+     */
+    private long readAvg10(String path) {
+        try {
+            mReader.read(path);
+        } catch (IOException e) {
+            return 0;
+        }
+        if (!mReader.nextLine() || !mReader.nextToken() || !mReader.tokenEquals("some")
+                || !mReader.nextField('=') || !mReader.nextField('.')) {
+            return 0;
+        }
+        long value = mReader.tokenAsLong() * 100;
+        if (mReader.nextToken()) {
+            value += mReader.tokenAsLong();
+        }
+        return value;
+    }
+
+    private static FileDescriptor openTrigger(String path) {
+        FileDescriptor fd = null;
+        try {
+            fd = Os.open(path, OsConstants.O_RDWR | OsConstants.O_NONBLOCK, 0);
+            byte[] trigger = (TRIGGER + "\0").getBytes(StandardCharsets.US_ASCII);
+            Os.write(fd, trigger, 0, trigger.length);
+            return fd;
+        } catch (ErrnoException e) {
+            Log.i(TAG, "no trigger on " + path + ": " + e.getMessage());
+            closeQuietly(fd);
+            return null;
+        } catch (IOException e) {
+            // InterruptedIOException of write
+            Log.w(TAG, "fail to write trigger to " + path, e);
+            closeQuietly(fd);
+            return null;
+        }
+    }
+
+    private static void closeQuietly(FileDescriptor fd) {
+        if (fd == null) {
+            return;
+        }
+        try {
+            Os.close(fd);
+        } catch (ErrnoException e) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+/**
+ * Daily statistics of stall episodes reported by PressureMonitor.
+ *
+ * Uploads "{resource}:count,totalMillis,maxAvg10Centi" for each resource and the top
+ * "{resource}/{foregroundPackage}" by episode count, and records episode durations and severity
+ * into daily histograms.
+ *
+ * Not thread safe, called on AnalyticsService's worker thread.
+ */
+class PressureStats implements DailyReport {
+    private static final String EVENT_CATEGORY_PRESSURE = "pressure";
+    private static final String EVENT_ACTION_DAILY = "daily";
+    private static final String KEY_EPISODES = "episodes";
+    private static final String UNKNOWN_PACKAGE = "unknown";
+
+    private static final int MAX_PACKAGES = 50;
+
+    private final HistogramStore mHistogramStore;
+    private final String[] mResources = PressureMonitor.RESOURCES;
+    private final long[] mCounts = new long[mResources.length];
+    private final long[] mTotalMillis = new long[mResources.length];
+    private final long[] mMaxAvg10s = new long[mResources.length];
+    private final SpaceSavingSketch mPackages = new SpaceSavingSketch(MAX_PACKAGES);
+
+    PressureStats(HistogramStore histogramStore) {
+        mHistogramStore = histogramStore;
+    }
+
+    void onStallEpisode(String resource, long durationMillis, long avg10Centi,
+            String foregroundPackage) {
+        for (int i = 0; i < mResources.length; i++) {
+            if (mResources[i].equals(resource)) {
+                mCounts[i]++;
+                mTotalMillis[i] += durationMillis;
+                mMaxAvg10s[i] = Math.max(mMaxAvg10s[i], avg10Centi);
+                mHistogramStore.record("pressure/" + resource + "_stall_ms", durationMillis);
+                mHistogramStore.record("pressure/" + resource + "_avg10_centi", avg10Centi);
+                mPackages.offer(resource + "/"
+                        + (foregroundPackage != null ? foregroundPackage : UNKNOWN_PACKAGE));
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void report(LogHelper logHelper, long nowElapsed) {
+        if (mPackages.isEmpty()) {
+            return;
+        }
+        CompactRecord record = new CompactRecord(EVENT_CATEGORY_PRESSURE, EVENT_ACTION_DAILY);
+        for (int i = 0; i < mResources.length; i++) {
+            record.add(mResources[i], mCounts[i], mTotalMillis[i], mMaxAvg10s[i]);
+            mCounts[i] = 0;
+            mTotalMillis[i] = 0;
+            mMaxAvg10s[i] = 0;
+        }
+        record.addSketch(KEY_EPISODES, mPackages);
+        mPackages.clear();
+        record.send(logHelper);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import java.io.IOException;
+
+/**
+ * Fields of /proc/[pid]/stat, see proc(5).
+ */
+class ProcessStat {
+    // field numbers, 1-based as in proc(5)
+    private static final int FIELD_STATE = 3;
+    private static final int FIELD_START_TIME = 22;
+
+    private ProcessStat() {
+    }
+
+    /**
+     * Gets start time of process after boot in clock ticks, from field 22 of stat file.
+     * @return start time, or -1 if not readable
+     */
+    static long readStartTicks(ProcFileReader reader, String path) {
+        try {
+            reader.read(path);
+        } catch (IOException e) {
+            return -1;
+        }
+        if (!reader.nextLine()) {
+            return -1;
+        }
+        // "pid (comm) state ppid ...", comm may contain spaces and ')', so it ends at the last ')'
+        String line = reader.restOfLine();
+        int end = line.lastIndexOf(')');
+        if (end == -1) {
+            return -1;
+        }
+        String[] fields = line.substring(end + 1).trim().split(" +");
+        int index = FIELD_START_TIME - FIELD_STATE;
+        if (fields.length <= index) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(fields[index]);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
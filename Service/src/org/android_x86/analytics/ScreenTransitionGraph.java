@@ -0,0 +1,178 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import android.content.ComponentName;
+
+import java.util.Arrays;
+
+/**
+ * Counts screen to screen transitions inside each app from hit screen events.
+ *
+ * Edges (previous component, next component) are counted in an open-addressed hash table of
+ * primitive longs. When the table is full, only the top PRUNE_KEEP_EDGES edges are kept, so
+ * memory is bounded. The daily report is an edge list of the top edges:
+ * "{package}/{previous class}>{next class}:{count}".
+ *
+ * Not thread safe, called on AnalyticsService's worker thread.
+ */
+class ScreenTransitionGraph implements DailyReport {
+    private static final String EVENT_CATEGORY_USAGE = "usage";
+    private static final String EVENT_ACTION_SCREEN_TRANSITIONS = "screen_transitions";
+    private static final String KEY_PRUNED = "pruned";
+
+    private static final int MAX_COMPONENTS = 2048;
+    // must be power of 2
+    private static final int TABLE_SIZE = 4096;
+    private static final int MAX_EDGES = TABLE_SIZE * 3 / 4;
+    private static final int PRUNE_KEEP_EDGES = TABLE_SIZE / 4;
+    private static final int MAX_REPORTED_EDGES = 256;
+
+    private static final long EMPTY = -1;
+
+    private final StringInterner mComponents = new StringInterner(MAX_COMPONENTS);
+    private final long[] mKeys = new long[TABLE_SIZE];
+    private final int[] mCounts = new int[TABLE_SIZE];
+    private int mEdges;
+    // sum of counts dropped by pruning, upper bound of error of each reported count
+    private long mPrunedCount;
+
+    private ComponentName mPrevious;
+    private int mPreviousId = -1;
+
+    ScreenTransitionGraph() {
+        Arrays.fill(mKeys, EMPTY);
+    }
+
+    void onHitScreen(ComponentName component) {
+        ComponentName previous = mPrevious;
+        int previousId = mPreviousId;
+        mPrevious = component;
+        mPreviousId = mComponents.intern(component.flattenToShortString());
+        if (previous == null || previousId == -1 || mPreviousId == -1
+                || previousId == mPreviousId
+                || !previous.getPackageName().equals(component.getPackageName())) {
+            return;
+        }
+        increment(((long) previousId << 32) | mPreviousId);
+    }
+
+    @Override
+    public void report(LogHelper logHelper, long nowElapsed) {
+        if (mEdges > 0) {
+            int[] slots = getSlotsByCount();
+            CompactRecord record = new CompactRecord(
+                    EVENT_CATEGORY_USAGE, EVENT_ACTION_SCREEN_TRANSITIONS);
+            if (mPrunedCount > 0) {
+                record.add(KEY_PRUNED, mPrunedCount);
+            }
+            StringBuilder edge = new StringBuilder();
+            for (int i = 0; i < slots.length && i < MAX_REPORTED_EDGES; i++) {
+                long key = mKeys[slots[i]];
+                String to = mComponents.get((int) key);
+                edge.setLength(0);
+                edge.append(mComponents.get((int) (key >>> 32)))
+                    .append('>')
+                    .append(to, to.indexOf('/') + 1, to.length());
+                record.add(edge.toString(), mCounts[slots[i]]);
+            }
+            record.send(logHelper);
+        }
+
+        Arrays.fill(mKeys, EMPTY);
+        Arrays.fill(mCounts, 0);
+        mEdges = 0;
+        mPrunedCount = 0;
+        mComponents.clear();
+        mPreviousId = mPrevious != null
+                ? mComponents.intern(mPrevious.flattenToShortString()) : -1;
+    }
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key & (TABLE_SIZE - 1);
+    }
+
+    private void increment(long key) {
+        int slot = hash(key);
+        while (mKeys[slot] != EMPTY) {
+            if (mKeys[slot] == key) {
+                mCounts[slot]++;
+                return;
+            }
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+        if (mEdges >= MAX_EDGES) {
+            prune();
+            increment(key);
+            return;
+        }
+        mKeys[slot] = key;
+        mCounts[slot] = 1;
+        mEdges++;
+    }
+
+    /**
+     * Gets occupied slots sorted by count descending.
+     */
+    private int[] getSlotsByCount() {
+        long[] sorted = new long[mEdges];
+        int n = 0;
+        for (int slot = 0; slot < TABLE_SIZE; slot++) {
+            if (mKeys[slot] != EMPTY) {
+                // count in high bits, slot in low bits
+                sorted[n++] = ((long) mCounts[slot] << 32) | slot;
+            }
+        }
+        Arrays.sort(sorted);
+        int[] slots = new int[n];
+        for (int i = 0; i < n; i++) {
+            slots[i] = (int) sorted[n - 1 - i];
+        }
+        return slots;
+    }
+
+    /**
+     * Keeps top PRUNE_KEEP_EDGES edges and rehashes them.
+     */
+    private void prune() {
+        int[] slots = getSlotsByCount();
+        int keep = Math.min(PRUNE_KEEP_EDGES, slots.length);
+        long[] keys = new long[keep];
+        int[] counts = new int[keep];
+        for (int i = 0; i < slots.length; i++) {
+            if (i < keep) {
+                keys[i] = mKeys[slots[i]];
+                counts[i] = mCounts[slots[i]];
+            } else {
+                mPrunedCount += mCounts[slots[i]];
+            }
+        }
+        Arrays.fill(mKeys, EMPTY);
+        Arrays.fill(mCounts, 0);
+        for (int i = 0; i < keep; i++) {
+            int slot = hash(keys[i]);
+            while (mKeys[slot] != EMPTY) {
+                slot = (slot + 1) & (TABLE_SIZE - 1);
+            }
+            mKeys[slot] = keys[i];
+            mCounts[slot] = counts[i];
+        }
+        mEdges = keep;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Space-Saving top-K heavy hitters sketch with fixed memory.
+ *
+ * Monitors at most capacity keys. A new key replaces the key with minimum count and inherits
+ * its count as error, so every count is overestimated by at most its error, and the error is at
+ * most total / capacity. Any key that is not monitored occurs at most getMaxError() times.
+ *
+ * Not thread safe.
+ */
+class SpaceSavingSketch {
+    private final int mCapacity;
+    private final HashMap<String, Integer> mSlots;
+    private final String[] mKeys;
+    private final long[] mCounts;
+    private final long[] mErrors;
+    // min-heap of slots ordered by count, and position of each slot in the heap
+    private final int[] mHeap;
+    private final int[] mHeapIndex;
+    private int mSize;
+    private long mTotal;
+
+    SpaceSavingSketch(int capacity) {
+        mCapacity = capacity;
+        mSlots = new HashMap<String, Integer>(capacity * 2);
+        mKeys = new String[capacity];
+        mCounts = new long[capacity];
+        mErrors = new long[capacity];
+        mHeap = new int[capacity];
+        mHeapIndex = new int[capacity];
+    }
+
+    void offer(String key) {
+        offer(key, 1, 0);
+    }
+
+    private void offer(String key, long count, long error) {
+        mTotal += count;
+        Integer slot = mSlots.get(key);
+        if (slot != null) {
+            mCounts[slot] += count;
+            mErrors[slot] += error;
+            siftDown(mHeapIndex[slot]);
+            return;
+        }
+        if (mSize < mCapacity) {
+            int newSlot = mSize++;
+            mKeys[newSlot] = key;
+            mCounts[newSlot] = count;
+            mErrors[newSlot] = error;
+            mSlots.put(key, newSlot);
+            mHeap[newSlot] = newSlot;
+            mHeapIndex[newSlot] = newSlot;
+            siftUp(newSlot);
+            return;
+        }
+        // replace the key with minimum count
+        int minSlot = mHeap[0];
+        long min = mCounts[minSlot];
+        mSlots.remove(mKeys[minSlot]);
+        mKeys[minSlot] = key;
+        mCounts[minSlot] = min + count;
+        mErrors[minSlot] = min + error;
+        mSlots.put(key, minSlot);
+        siftDown(0);
+    }
+
+    /**
+     * Gets total count of all offered keys.
+     */
+    long getTotal() {
+        return mTotal;
+    }
+
+    /**
+     * Gets max count of keys which are not monitored, also the max error of monitored keys.
+     */
+    long getMaxError() {
+        return mSize < mCapacity ? 0 : mCounts[mHeap[0]];
+    }
+
+    boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Merges other sketch into this one, see "Mergeable Summaries" (Agarwal et al.).
+     * Keys missing in one sketch are assumed to have that sketch's max error.
+     */
+    void merge(SpaceSavingSketch other) {
+        HashMap<String, long[]> merged = new HashMap<String, long[]>();
+        long thisMin = getMaxError();
+        long otherMin = other.getMaxError();
+        for (int slot = 0; slot < mSize; slot++) {
+            merged.put(mKeys[slot], new long[] {
+                    mCounts[slot] + otherMin, mErrors[slot] + otherMin });
+        }
+        for (int slot = 0; slot < other.mSize; slot++) {
+            long[] entry = merged.get(other.mKeys[slot]);
+            if (entry == null) {
+                merged.put(other.mKeys[slot], new long[] {
+                        other.mCounts[slot] + thisMin, other.mErrors[slot] + thisMin });
+            } else {
+                entry[0] += other.mCounts[slot] - otherMin;
+                entry[1] += other.mErrors[slot] - otherMin;
+            }
+        }
+        long total = mTotal + other.mTotal;
+
+        // keep top capacity keys
+        @SuppressWarnings("unchecked")
+        Map.Entry<String, long[]>[] entries = merged.entrySet().toArray(new Map.Entry[0]);
+        Arrays.sort(entries, new Comparator<Map.Entry<String, long[]>>() {
+            @Override
+            public int compare(Map.Entry<String, long[]> a, Map.Entry<String, long[]> b) {
+                return Long.compare(b.getValue()[0], a.getValue()[0]);
+            }
+        });
+        clear();
+        for (int i = 0; i < entries.length && i < mCapacity; i++) {
+            long[] entry = entries[i].getValue();
+            offer(entries[i].getKey(), entry[0], entry[1]);
+        }
+        mTotal = total;
+    }
+
+    /**
+     * Gets slots of monitored keys ordered by count descending.
+     */
+    int[] getSlotsByCount() {
+        long[] sorted = new long[mSize];
+        for (int slot = 0; slot < mSize; slot++) {
+            // count in high bits, slot in low bits, counts are far below 2^32 per day
+            sorted[slot] = (Math.min(mCounts[slot], Integer.MAX_VALUE) << 32) | slot;
+        }
+        Arrays.sort(sorted);
+        int[] slots = new int[mSize];
+        for (int i = 0; i < mSize; i++) {
+            slots[i] = (int) sorted[mSize - 1 - i];
+        }
+        return slots;
+    }
+
+    String getKey(int slot) {
+        return mKeys[slot];
+    }
+
+    /**
+     * Gets count of key in slot, overestimated by at most getError(slot).
+     */
+    long getCount(int slot) {
+        return mCounts[slot];
+    }
+
+    long getError(int slot) {
+        return mErrors[slot];
+    }
+
+    void clear() {
+        mSlots.clear();
+        Arrays.fill(mKeys, null);
+        mSize = 0;
+        mTotal = 0;
+    }
+
+    private void siftUp(int i) {
+        int slot = mHeap[i];
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (mCounts[mHeap[parent]] <= mCounts[slot]) {
+                break;
+            }
+            setHeap(i, mHeap[parent]);
+            i = parent;
+        }
+        setHeap(i, slot);
+    }
+
+    private void siftDown(int i) {
+        int slot = mHeap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= mSize) {
+                break;
+            }
+            if (child + 1 < mSize && mCounts[mHeap[child + 1]] < mCounts[mHeap[child]]) {
+                child++;
+            }
+            if (mCounts[slot] <= mCounts[mHeap[child]]) {
+                break;
+            }
+            setHeap(i, mHeap[child]);
+            i = child;
+        }
+        setHeap(i, slot);
+    }
+
+    private void setHeap(int i, int slot) {
+        mHeap[i] = slot;
+        mHeapIndex[slot] = i;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import java.util.HashMap;
+
+/**
+ * Maps strings to dense ids [0, size()), so statistics can be kept in primitive arrays.
+ * Not thread safe.
+ */
+class StringInterner {
+    private final int mCapacity;
+    private final HashMap<String, Integer> mIds = new HashMap<String, Integer>();
+    private String[] mStrings = new String[16];
+    private int mSize;
+
+    /**
+     * @param capacity max number of interned strings
+     */
+    StringInterner(int capacity) {
+        mCapacity = capacity;
+    }
+
+    /**
+     * Gets id of string, interns it if absent. Returns -1 if full.
+     */
+    int intern(String s) {
+        Integer id = mIds.get(s);
+        if (id != null) {
+            return id;
+        }
+        if (mSize >= mCapacity) {
+            return -1;
+        }
+        if (mSize == mStrings.length) {
+            String[] strings = new String[Math.min(mCapacity, mSize * 2)];
+            System.arraycopy(mStrings, 0, strings, 0, mSize);
+            mStrings = strings;
+        }
+        mStrings[mSize] = s;
+        mIds.put(s, mSize);
+        return mSize++;
+    }
+
+    /**
+     * Gets id of string or -1 if not interned.
+     */
+    int getId(String s) {
+        Integer id = mIds.get(s);
+        return id != null ? id : -1;
+    }
+
+    String get(int id) {
+        return mStrings[id];
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    void clear() {
+        mIds.clear();
+        for (int i = 0; i < mSize; i++) {
+            mStrings[i] = null;
+        }
+        mSize = 0;
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Periodic sampler of cpu utilization, iowait, load average, available memory and disk I/O.
+ *
+ * Samples /proc/stat, /proc/loadavg and /proc/meminfo at a fixed interval while started, and
+ * records the cpu shares of each interval and the instant values into daily histograms. Disk
+ * I/O of the same interval is recorded by DiskStats. Stopped while screen is off, so the device
+ * is not kept busy and idle time is not sampled.
+ *
+ * Not thread safe, called on AnalyticsService's worker thread.
+ */
+class SystemSampler {
+    private static final String TAG = "SystemSampler";
+
+    private static final String PROC_STAT = "/proc/stat";
+    private static final String PROC_LOADAVG = "/proc/loadavg";
+    private static final String PROC_MEMINFO = "/proc/meminfo";
+
+    private static final String HISTOGRAM_CPU_BUSY = "system/cpu_busy_permille";
+    private static final String HISTOGRAM_CPU_IOWAIT = "system/cpu_iowait_permille";
+    private static final String HISTOGRAM_LOAD1 = "system/load1_centi";
+    private static final String HISTOGRAM_MEM_AVAILABLE = "system/mem_available_mb";
+
+    // user nice system idle iowait irq softirq steal, guest time is included in user
+    private static final int CPU_COLUMNS = 8;
+    private static final int COLUMN_IDLE = 3;
+    private static final int COLUMN_IOWAIT = 4;
+    private static final int PERMILLE = 1000;
+    private static final int KB_IN_MB = 1024;
+
+    private final Handler mHandler;
+    private final HistogramStore mHistogramStore;
+    private final long mIntervalMillis;
+    private final ProcFileReader mReader = new ProcFileReader();
+    private final DiskStats mDiskStats;
+    // false once diskstats fails to read, cpu and memory are still sampled
+    private boolean mDiskStatsReadable = true;
+    // false once /proc fails to read, as on devices where SELinux denies it
+    private boolean mProcReadable = true;
+
+    private boolean mStarted;
+    // cpu ticks of previous sample, valid if mPreviousTotal > 0
+    private long mPreviousTotal;
+    private long mPreviousIdle;
+    private long mPreviousIowait;
+
+    private final Runnable mSampleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            // sample() may stop on failure
+            if (sample()) {
+                mHandler.postDelayed(this, mIntervalMillis);
+            }
+        }
+    };
+
+    /**
+     * @param handler handler of the thread to sample on
+     * @param intervalMillis sample interval, 0 to disable
+     */
+    SystemSampler(Handler handler, final HistogramStore histogramStore, long intervalMillis) {
+        mHandler = handler;
+        mHistogramStore = histogramStore;
+        mIntervalMillis = intervalMillis;
+        mDiskStats = DiskStats.ofBuiltInDisks(new DiskStats.Recorder() {
+            @Override
+            public void record(String key, long value) {
+                histogramStore.record(key, value);
+            }
+        });
+    }
+
+    void start() {
+        if (mStarted || mIntervalMillis <= 0 || !mProcReadable) {
+            return;
+        }
+        mStarted = true;
+        mPreviousTotal = 0;
+        mDiskStats.reset();
+        mHandler.post(mSampleRunnable);
+    }
+
+    void stop() {
+        if (!mStarted) {
+            return;
+        }
+        mStarted = false;
+        mHandler.removeCallbacks(mSampleRunnable);
+    }
+
+    /**
+     * @return false if sampling is stopped on failure
+     */
+    private boolean sample() {
+        try {
+            sampleCpu();
+            sampleLoad();
+            sampleMemory();
+        } catch (IOException e) {
+            Log.w(TAG, "fail to sample, stop", e);
+            mProcReadable = false;
+            stop();
+            return false;
+        }
+        if (mDiskStatsReadable && !mDiskStats.sample(SystemClock.elapsedRealtime())) {
+            Log.w(TAG, "fail to read diskstats, stop sampling disks");
+            mDiskStatsReadable = false;
+        }
+        return true;
+    }
+
+    private void sampleCpu() throws IOException {
+        mReader.read(PROC_STAT);
+        // the first line sums all cpus
+        if (!mReader.nextLine() || !mReader.nextToken() || !mReader.tokenEquals("cpu")) {
+            return;
+        }
+        long total = 0;
+        long idle = 0;
+        long iowait = 0;
+        for (int i = 0; i < CPU_COLUMNS && mReader.nextToken(); i++) {
+            long ticks = mReader.tokenAsLong();
+            total += ticks;
+            if (i == COLUMN_IDLE) {
+                idle = ticks;
+            } else if (i == COLUMN_IOWAIT) {
+                iowait = ticks;
+            }
+        }
+        long totalDelta = total - mPreviousTotal;
+        if (mPreviousTotal > 0 && totalDelta > 0) {
+            long idleDelta = idle - mPreviousIdle;
+            // iowait of a cpu may go backwards
+            long iowaitDelta = Math.max(iowait - mPreviousIowait, 0);
+            long busyDelta = Math.max(totalDelta - idleDelta - iowaitDelta, 0);
+            mHistogramStore.record(HISTOGRAM_CPU_BUSY, busyDelta * PERMILLE / totalDelta);
+            mHistogramStore.record(HISTOGRAM_CPU_IOWAIT, iowaitDelta * PERMILLE / totalDelta);
+        }
+        mPreviousTotal = total;
+        mPreviousIdle = idle;
+        mPreviousIowait = iowait;
+    }
+
+    private void sampleLoad() throws IOException {
+        mReader.read(PROC_LOADAVG);
+        if (!mReader.nextLine() || !mReader.nextField('.')) {
+            return;
+        }
+        // "0.57 0.52 0.48 1/523 1234", keep 2 decimals without parsing a double
+        long load = mReader.tokenAsLong() * 100;
+        if (mReader.nextToken()) {
+            load += mReader.tokenAsLong();
+        }
+        mHistogramStore.record(HISTOGRAM_LOAD1, load);
+    }
+
+    private void sampleMemory() throws IOException {
+        mReader.read(PROC_MEMINFO);
+        long available = -1;
+        long free = 0;
+        long cached = 0;
+        while (mReader.nextLine() && available < 0) {
+            if (!mReader.nextField(':')) {
+                continue;
+            }
+            if (mReader.tokenEquals("MemAvailable")) {
+                available = mReader.nextLong(0);
+            } else if (mReader.tokenEquals("MemFree")) {
+                free = mReader.nextLong(0);
+            } else if (mReader.tokenEquals("Cached")) {
+                cached = mReader.nextLong(0);
+            }
+        }
+        // no MemAvailable before kernel 3.14
+        if (available < 0) {
+            available = free + cached;
+        }
+        mHistogramStore.record(HISTOGRAM_MEM_AVAILABLE, available / KB_IN_MB);
+    }
+}
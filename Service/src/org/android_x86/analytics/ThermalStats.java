@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Detects thermal throttling episodes from thermal zone temperatures and cpu frequencies.
+ *
+ * Cpus are throttled when hot and their frequency is capped below the hardware max. The cap of
+ * a cpu is its scaling_max_freq, lowered by thermal cooling devices, against its
+ * cpuinfo_max_freq; scaling_cur_freq is not used since it also drops when idle. An episode
+ * starts at ENTER_TEMP with a cpu capped below ENTER_FREQ_RATIO, and ends below EXIT_TEMP or
+ * when no cpu is capped below EXIT_FREQ_RATIO, so it does not flap around one threshold. An
+ * episode is counted on the day it ends, its throttled time on the days it spans. Samples every
+ * FAST_INTERVAL_MILLIS while warm and every SLOW_INTERVAL_MILLIS otherwise. Handler messages are
+ * not delivered in suspend, so it costs nothing then.
+ *
+ * Not thread safe, called on AnalyticsService's worker thread.
+ */
+class ThermalStats implements DailyReport {
+    private static final String THERMAL_DIR = "/sys/class/thermal";
+    private static final String THERMAL_ZONE_PREFIX = "thermal_zone";
+    private static final String CPU_DIR = "/sys/devices/system/cpu/cpu";
+
+    private static final String EVENT_CATEGORY_THERMAL = "thermal";
+    private static final String EVENT_ACTION_DAILY = "daily";
+    private static final String KEY_THROTTLE = "throttle";
+    private static final String KEY_MAX_TEMP = "max_temp";
+    private static final String HISTOGRAM_THROTTLE_SECONDS = "thermal/throttle_seconds";
+    private static final String HISTOGRAM_THROTTLE_PEAK_TEMP = "thermal/throttle_peak_temp_c";
+
+    // temperatures in millidegree Celsius as in sysfs
+    private static final long WARM_TEMP = 60000;
+    private static final long ENTER_TEMP = 80000;
+    private static final long EXIT_TEMP = 72000;
+    // ignore bogus readings of broken sensors
+    private static final long MAX_VALID_TEMP = 150000;
+    private static final double ENTER_FREQ_RATIO = 0.8;
+    private static final double EXIT_FREQ_RATIO = 0.9;
+
+    private static final long FAST_INTERVAL_MILLIS = 5 * 1000;
+    private static final long SLOW_INTERVAL_MILLIS = 60 * 1000;
+    private static final int MS_IN_SECOND = 1000;
+    private static final int MILLIDEGREE = 1000;
+
+    private final Handler mHandler;
+    private final HistogramStore mHistogramStore;
+    private final ProcFileReader mReader = new ProcFileReader(64, 256);
+    private final String[] mTempPaths;
+    private final int mCpuCount;
+
+    private boolean mStarted;
+    // start of current episode, 0 if none
+    private long mEpisodeStart;
+    // time of current episode before this is counted by previous reports
+    private long mEpisodeCountedUntil;
+    private long mEpisodePeakTemp;
+
+    // daily statistics
+    private long mEpisodes;
+    private long mThrottledMillis;
+    private long mPeakTemp;
+    private long mMaxTemp;
+
+    private final Runnable mSampleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mHandler.postDelayed(this, sample());
+        }
+    };
+
+    ThermalStats(Handler handler, HistogramStore histogramStore) {
+        mHandler = handler;
+        mHistogramStore = histogramStore;
+
+        List<String> paths = new ArrayList<String>();
+        String[] names = new File(THERMAL_DIR).list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(THERMAL_ZONE_PREFIX)) {
+                    paths.add(THERMAL_DIR + "/" + name + "/temp");
+                }
+            }
+        }
+        mTempPaths = paths.toArray(new String[paths.size()]);
+        int cpus = 0;
+        while (new File(CPU_DIR + cpus + "/cpufreq").exists()) {
+            cpus++;
+        }
+        mCpuCount = cpus;
+    }
+
+    void start() {
+        if (mStarted || mTempPaths.length == 0 || mCpuCount == 0) {
+            return;
+        }
+        mStarted = true;
+        mHandler.post(mSampleRunnable);
+    }
+
+    /**
+     * Samples and gets delay of next sample.
+     */
+    private long sample() {
+        long temp = -1;
+        for (String path : mTempPaths) {
+            long t = mReader.readLong(path, -1);
+            if (t > 0 && t < MAX_VALID_TEMP) {
+                temp = Math.max(temp, t);
+            }
+        }
+        if (temp < 0) {
+            return SLOW_INTERVAL_MILLIS;
+        }
+        mMaxTemp = Math.max(mMaxTemp, temp);
+
+        // cap of the most capped cpu, offline cpus have no cpufreq
+        double ratio = 1;
+        for (int i = 0; i < mCpuCount; i++) {
+            String dir = CPU_DIR + i + "/cpufreq/";
+            long hardwareMax = mReader.readLong(dir + "cpuinfo_max_freq", 0);
+            long cap = mReader.readLong(dir + "scaling_max_freq", 0);
+            if (hardwareMax > 0 && cap > 0) {
+                ratio = Math.min(ratio, (double) cap / hardwareMax);
+            }
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        if (mEpisodeStart == 0) {
+            if (temp >= ENTER_TEMP && ratio < ENTER_FREQ_RATIO) {
+                mEpisodeStart = now;
+                mEpisodeCountedUntil = now;
+                mEpisodePeakTemp = temp;
+            }
+        } else {
+            mEpisodePeakTemp = Math.max(mEpisodePeakTemp, temp);
+            if (temp < EXIT_TEMP || ratio >= EXIT_FREQ_RATIO) {
+                endEpisode(now);
+            }
+        }
+        return mEpisodeStart != 0 || temp >= WARM_TEMP
+                ? FAST_INTERVAL_MILLIS : SLOW_INTERVAL_MILLIS;
+    }
+
+    private void endEpisode(long now) {
+        mEpisodes++;
+        mThrottledMillis += now - mEpisodeCountedUntil;
+        mPeakTemp = Math.max(mPeakTemp, mEpisodePeakTemp);
+        mHistogramStore.record(HISTOGRAM_THROTTLE_SECONDS, (now - mEpisodeStart) / MS_IN_SECOND);
+        mHistogramStore.record(HISTOGRAM_THROTTLE_PEAK_TEMP, mEpisodePeakTemp / MILLIDEGREE);
+        mEpisodeStart = 0;
+    }
+
+    @Override
+    public void report(LogHelper logHelper, long nowElapsed) {
+        if (mEpisodeStart != 0) {
+            // throttled time of the current episode so far, the episode is counted when it ends
+            mThrottledMillis += nowElapsed - mEpisodeCountedUntil;
+            mEpisodeCountedUntil = nowElapsed;
+            mPeakTemp = Math.max(mPeakTemp, mEpisodePeakTemp);
+        }
+        if (mMaxTemp == 0) {
+            return;
+        }
+        CompactRecord record = new CompactRecord(EVENT_CATEGORY_THERMAL, EVENT_ACTION_DAILY);
+        record.add(KEY_THROTTLE, mEpisodes, mThrottledMillis / MS_IN_SECOND,
+                mPeakTemp / MILLIDEGREE);
+        record.add(KEY_MAX_TEMP, mMaxTemp / MILLIDEGREE);
+        record.send(logHelper);
+        mEpisodes = 0;
+        mThrottledMillis = 0;
+        mPeakTemp = 0;
+        mMaxTemp = 0;
+    }
+}
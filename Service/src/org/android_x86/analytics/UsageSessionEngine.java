@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Per-app foreground usage from hit screen and screen on/off events.
+ *
+ * A session is a continuous foreground period of a package, it's closed by switching to other
+ * package, screen off or shutdown. A launch is a session opened by switching from other package,
+ * sessions resumed by screen on are not launches.
+ *
+ * Daily foreground time, session and launch counts are kept in primitive arrays indexed by
+ * interned package id. Not thread safe, called on AnalyticsService's worker thread.
+ */
+class UsageSessionEngine implements DailyReport {
+    private static final String EVENT_CATEGORY_USAGE = "usage";
+    private static final String EVENT_ACTION_DAILY_APP_USAGE = "daily_app_usage";
+
+    private static final int MAX_PACKAGES = 512;
+    private static final int MAX_REPORTED_PACKAGES = 64;
+    private static final int MS_IN_SECOND = 1000;
+
+    private final StringInterner mPackages = new StringInterner(MAX_PACKAGES);
+    private long[] mForegroundMillis = new long[16];
+    private int[] mSessions = new int[16];
+    private int[] mLaunches = new int[16];
+
+    private boolean mScreenOn = true;
+    // foreground package id or -1
+    private int mCurrent = -1;
+    // elapsedRealtime when current session opens, valid when session is open
+    private long mSessionStart;
+    private boolean mSessionOpen;
+
+    void onHitScreen(String packageName, long nowElapsed) {
+        int id = intern(packageName);
+        if (id == mCurrent) {
+            return;
+        }
+        closeSession(nowElapsed);
+        boolean launch = mCurrent != -1;
+        mCurrent = id;
+        if (mScreenOn && id != -1) {
+            openSession(nowElapsed);
+            if (launch) {
+                mLaunches[id]++;
+            }
+        }
+    }
+
+    void onScreenOn(long nowElapsed) {
+        if (mScreenOn) {
+            return;
+        }
+        mScreenOn = true;
+        if (mCurrent != -1) {
+            openSession(nowElapsed);
+        }
+    }
+
+    void onScreenOff(long nowElapsed) {
+        closeSession(nowElapsed);
+        mScreenOn = false;
+    }
+
+    void onShutdown(long nowElapsed) {
+        onScreenOff(nowElapsed);
+    }
+
+    @Override
+    public void report(LogHelper logHelper, long nowElapsed) {
+        // count running session time into the finished day without closing it
+        if (mSessionOpen) {
+            mForegroundMillis[mCurrent] += nowElapsed - mSessionStart;
+            mSessionStart = nowElapsed;
+        }
+
+        Integer[] ids = new Integer[mPackages.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+        }
+        Arrays.sort(ids, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(mForegroundMillis[b], mForegroundMillis[a]);
+            }
+        });
+        CompactRecord record = new CompactRecord(
+                EVENT_CATEGORY_USAGE, EVENT_ACTION_DAILY_APP_USAGE);
+        for (int i = 0; i < ids.length && i < MAX_REPORTED_PACKAGES; i++) {
+            int id = ids[i];
+            if (mSessions[id] == 0 && mForegroundMillis[id] == 0) {
+                continue;
+            }
+            record.add(mPackages.get(id),
+                    mForegroundMillis[id] / MS_IN_SECOND, mSessions[id], mLaunches[id]);
+        }
+        if (!record.isEmpty()) {
+            record.send(logHelper);
+        }
+
+        // start a new day, only keep current package
+        String current = mCurrent != -1 ? mPackages.get(mCurrent) : null;
+        mPackages.clear();
+        Arrays.fill(mForegroundMillis, 0);
+        Arrays.fill(mSessions, 0);
+        Arrays.fill(mLaunches, 0);
+        mCurrent = current != null ? intern(current) : -1;
+    }
+
+    private int intern(String packageName) {
+        int id = mPackages.intern(packageName);
+        if (id >= mForegroundMillis.length) {
+            int length = Math.min(MAX_PACKAGES, mForegroundMillis.length * 2);
+            mForegroundMillis = Arrays.copyOf(mForegroundMillis, length);
+            mSessions = Arrays.copyOf(mSessions, length);
+            mLaunches = Arrays.copyOf(mLaunches, length);
+        }
+        return id;
+    }
+
+    private void openSession(long nowElapsed) {
+        mSessions[mCurrent]++;
+        mSessionStart = nowElapsed;
+        mSessionOpen = true;
+    }
+
+    private void closeSession(long nowElapsed) {
+        if (mSessionOpen) {
+            mForegroundMillis[mCurrent] += nowElapsed - mSessionStart;
+            mSessionOpen = false;
+        }
+    }
+}
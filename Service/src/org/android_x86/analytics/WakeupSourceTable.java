@@ -0,0 +1,200 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Table of wakeup sources parsed from debugfs wakeup_sources, with the counters of the last
+ * snapshot and the deltas accumulated since the last clearDaily().
+ *
+ * Sources are kept in an open addressed table by name hash, so parsing a snapshot allocates
+ * only the name of a newly seen source.
+ *
+ * Not thread safe.
+ */
+class WakeupSourceTable {
+    private static final String COLUMN_NAME = "name";
+    private static final String COLUMN_ACTIVE_COUNT = "active_count";
+    private static final String COLUMN_WAKEUP_COUNT = "wakeup_count";
+    private static final String COLUMN_TOTAL_TIME = "total_time";
+
+    // power of 2
+    private static final int MAX_SOURCES = 512;
+
+    // 0 for empty slot
+    private final long[] mHashes = new long[MAX_SOURCES];
+    private final String[] mNames = new String[MAX_SOURCES];
+    private final long[] mActiveSnapshot = new long[MAX_SOURCES];
+    private final long[] mWakeupSnapshot = new long[MAX_SOURCES];
+    private final long[] mTimeSnapshot = new long[MAX_SOURCES];
+    private final long[] mActiveDaily = new long[MAX_SOURCES];
+    private final long[] mWakeupDaily = new long[MAX_SOURCES];
+    private final long[] mTimeDaily = new long[MAX_SOURCES];
+    private int mSourceCount;
+
+    /**
+     * Parses the tab separated table read by reader, whose columns vary among kernel versions,
+     * and accumulates deltas since last snapshot if requested.
+     * @return false if the header is unknown
+     */
+    boolean parse(ProcFileReader reader, boolean accumulate) {
+        if (!reader.nextLine() || !reader.nextToken() || !reader.tokenEquals(COLUMN_NAME)) {
+            return false;
+        }
+        int activeColumn = -1;
+        int wakeupColumn = -1;
+        int timeColumn = -1;
+        for (int column = 1; reader.nextToken(); column++) {
+            if (reader.tokenEquals(COLUMN_ACTIVE_COUNT)) {
+                activeColumn = column;
+            } else if (reader.tokenEquals(COLUMN_WAKEUP_COUNT)) {
+                wakeupColumn = column;
+            } else if (reader.tokenEquals(COLUMN_TOTAL_TIME)) {
+                timeColumn = column;
+            }
+        }
+
+        while (reader.nextLine()) {
+            // names may contain spaces but not tabs, and are padded with spaces
+            if (!reader.nextField('\t')) {
+                continue;
+            }
+            int slot = findSlot(reader);
+            if (slot < 0) {
+                continue;
+            }
+            long active = 0;
+            long wakeup = 0;
+            long time = 0;
+            for (int column = 1; reader.nextToken(); column++) {
+                if (column == activeColumn) {
+                    active = reader.tokenAsLong();
+                } else if (column == wakeupColumn) {
+                    wakeup = reader.tokenAsLong();
+                } else if (column == timeColumn) {
+                    time = reader.tokenAsLong();
+                }
+            }
+            if (accumulate) {
+                mActiveDaily[slot] += delta(active, mActiveSnapshot[slot]);
+                mWakeupDaily[slot] += delta(wakeup, mWakeupSnapshot[slot]);
+                mTimeDaily[slot] += delta(time, mTimeSnapshot[slot]);
+            }
+            mActiveSnapshot[slot] = active;
+            mWakeupSnapshot[slot] = wakeup;
+            mTimeSnapshot[slot] = time;
+        }
+        return true;
+    }
+
+    /**
+     * Gets delta of counter since snapshot. Counters restart when a wakeup source is
+     * re-registered, then the current value is the delta.
+     */
+    static long delta(long current, long snapshot) {
+        return current >= snapshot ? current - snapshot : current;
+    }
+
+    /**
+     * Gets slots of sources with daily activity, ordered by daily active time descending.
+     */
+    int[] getTopSlots(int max) {
+        Integer[] slots = new Integer[mSourceCount];
+        int n = 0;
+        for (int i = 0; i < MAX_SOURCES; i++) {
+            if (mHashes[i] != 0 && (mActiveDaily[i] > 0 || mTimeDaily[i] > 0)) {
+                slots[n++] = i;
+            }
+        }
+        Arrays.sort(slots, 0, n, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(mTimeDaily[b], mTimeDaily[a]);
+            }
+        });
+        int[] top = new int[Math.min(n, max)];
+        for (int i = 0; i < top.length; i++) {
+            top[i] = slots[i];
+        }
+        return top;
+    }
+
+    /**
+     * Gets slot of named source, -1 if not seen.
+     */
+    int getSlot(String name) {
+        for (int i = 0; i < MAX_SOURCES; i++) {
+            if (mHashes[i] != 0 && mNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    String getName(int slot) {
+        return mNames[slot];
+    }
+
+    long getDailyWakeups(int slot) {
+        return mWakeupDaily[slot];
+    }
+
+    long getDailyActivations(int slot) {
+        return mActiveDaily[slot];
+    }
+
+    long getDailyActiveMillis(int slot) {
+        return mTimeDaily[slot];
+    }
+
+    int size() {
+        return mSourceCount;
+    }
+
+    void clearDaily() {
+        Arrays.fill(mActiveDaily, 0);
+        Arrays.fill(mWakeupDaily, 0);
+        Arrays.fill(mTimeDaily, 0);
+    }
+
+    /**
+     * Finds or adds slot of source named by current token, -1 if table is full.
+     */
+    private int findSlot(ProcFileReader reader) {
+        long hash = reader.tokenHash();
+        if (hash == 0) {
+            hash = 1;
+        }
+        int mask = MAX_SOURCES - 1;
+        for (int i = (int) (hash ^ (hash >>> 32)) & mask; ; i = (i + 1) & mask) {
+            if (mHashes[i] == hash) {
+                return i;
+            }
+            if (mHashes[i] == 0) {
+                // keep a quarter of slots free for short probes
+                if (mSourceCount >= MAX_SOURCES * 3 / 4) {
+                    return -1;
+                }
+                mHashes[i] = hash;
+                mNames[i] = reader.tokenAsString();
+                mSourceCount++;
+                return i;
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Suspend and wakeup source statistics in screen off windows.
+ *
+ * Snapshots suspend_stats and the wakeup source table when screen turns off, and accumulates
+ * their deltas when screen turns on. Files are parsed in place by ProcFileReader, wakeup sources
+ * into a WakeupSourceTable. Daily uploads the failed suspend counters and the wakeup sources
+ * with the most active time.
+ *
+ * Not thread safe, called on AnalyticsService's worker thread.
+ */
+class WakeupStats implements DailyReport {
+    private static final String TAG = "WakeupStats";
+
+    private static final String EVENT_CATEGORY_POWER_USAGE = "power_usage";
+    private static final String EVENT_ACTION_DAILY_WAKEUP = "daily_wakeup";
+    private static final String KEY_SUSPEND = "suspend";
+
+    // file of "key: value" lines on older kernels, directory of files since 4.x
+    private static final String[] SUSPEND_STATS_PATHS = {
+            "/sys/power/suspend_stats",
+            "/sys/kernel/debug/suspend_stats",
+            "/d/suspend_stats",
+    };
+    private static final String[] WAKEUP_SOURCES_PATHS = {
+            "/sys/kernel/debug/wakeup_sources",
+            "/d/wakeup_sources",
+    };
+
+    private static final String[] SUSPEND_COUNTERS = {
+            "success",
+            "fail",
+            "failed_freeze",
+            "failed_prepare",
+            "failed_suspend",
+            "failed_suspend_late",
+            "failed_suspend_noirq",
+            "failed_resume",
+            "failed_resume_early",
+            "failed_resume_noirq",
+    };
+
+    private static final int MAX_REPORTED_SOURCES = 20;
+    private static final int MS_IN_SECOND = 1000;
+
+    private final ProcFileReader mReader = new ProcFileReader();
+
+    private final File mSuspendStatsFile = findFile(SUSPEND_STATS_PATHS);
+    private final File mWakeupSourcesFile = findFile(WAKEUP_SOURCES_PATHS);
+
+    // suspend counters of last snapshot and daily deltas
+    private final long[] mSuspendSnapshot = new long[SUSPEND_COUNTERS.length];
+    private final long[] mSuspendDaily = new long[SUSPEND_COUNTERS.length];
+    private final long[] mSuspendCurrent = new long[SUSPEND_COUNTERS.length];
+
+    private final WakeupSourceTable mSources = new WakeupSourceTable();
+
+    // start of current screen off window, -1 if screen is on
+    private long mWindowStart = -1;
+    private long mScreenOffMillis;
+
+    void onScreenOff() {
+        if (mSuspendStatsFile == null && mWakeupSourcesFile == null) {
+            return;
+        }
+        sample(false);
+        mWindowStart = SystemClock.elapsedRealtime();
+    }
+
+    void onScreenOn() {
+        if (mWindowStart < 0) {
+            return;
+        }
+        sample(true);
+        mScreenOffMillis += SystemClock.elapsedRealtime() - mWindowStart;
+        mWindowStart = -1;
+    }
+
+    @Override
+    public void report(LogHelper logHelper, long nowElapsed) {
+        if (mWindowStart >= 0) {
+            // count the current window so far
+            sample(true);
+            mScreenOffMillis += nowElapsed - mWindowStart;
+            mWindowStart = nowElapsed;
+        }
+        if (mScreenOffMillis == 0) {
+            return;
+        }
+
+        CompactRecord record = new CompactRecord(
+                EVENT_CATEGORY_POWER_USAGE, EVENT_ACTION_DAILY_WAKEUP);
+        long[] suspend = Arrays.copyOf(mSuspendDaily, SUSPEND_COUNTERS.length + 1);
+        suspend[SUSPEND_COUNTERS.length] = mScreenOffMillis / MS_IN_SECOND;
+        record.add(KEY_SUSPEND, suspend);
+
+        for (int slot : mSources.getTopSlots(MAX_REPORTED_SOURCES)) {
+            record.add(mSources.getName(slot), mSources.getDailyWakeups(slot),
+                    mSources.getDailyActivations(slot), mSources.getDailyActiveMillis(slot));
+        }
+        record.send(logHelper);
+
+        Arrays.fill(mSuspendDaily, 0);
+        mSources.clearDaily();
+        mScreenOffMillis = 0;
+    }
+
+    /**
+     * Reads current counters, accumulates deltas since last snapshot if requested.
+     */
+    private void sample(boolean accumulate) {
+        if (readSuspendStats()) {
+            for (int i = 0; i < SUSPEND_COUNTERS.length; i++) {
+                if (accumulate) {
+                    mSuspendDaily[i] += WakeupSourceTable.delta(
+                            mSuspendCurrent[i], mSuspendSnapshot[i]);
+                }
+                mSuspendSnapshot[i] = mSuspendCurrent[i];
+            }
+        }
+        if (mWakeupSourcesFile != null && read(mWakeupSourcesFile)
+                && !mSources.parse(mReader, accumulate)) {
+            Log.w(TAG, "unknown wakeup_sources header");
+        }
+    }
+
+    private boolean readSuspendStats() {
+        if (mSuspendStatsFile == null) {
+            return false;
+        }
+        Arrays.fill(mSuspendCurrent, 0);
+        if (mSuspendStatsFile.isDirectory()) {
+            for (int i = 0; i < SUSPEND_COUNTERS.length; i++) {
+                File file = new File(mSuspendStatsFile, SUSPEND_COUNTERS[i]);
+                mSuspendCurrent[i] = mReader.readLong(file.getPath(), 0);
+            }
+            return true;
+        }
+        if (!read(mSuspendStatsFile)) {
+            return false;
+        }
+        // "key: value" lines, followed by the failure history
+        while (mReader.nextLine()) {
+            if (!mReader.nextField(':')) {
+                continue;
+            }
+            for (int i = 0; i < SUSPEND_COUNTERS.length; i++) {
+                if (mReader.tokenEquals(SUSPEND_COUNTERS[i])) {
+                    mSuspendCurrent[i] = mReader.nextLong(0);
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean read(File file) {
+        try {
+            mReader.read(file.getPath());
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "fail to read " + file, e);
+            return false;
+        }
+    }
+
+    private static File findFile(String[] paths) {
+        for (String path : paths) {
+            File file = new File(path);
+            if (file.canRead()) {
+                return file;
+            }
+        }
+        return null;
+    }
+}
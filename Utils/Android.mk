@@ -4,7 +4,9 @@ LOCAL_PATH := $(call my-dir)
 
 include $(CLEAR_VARS)
 
-LOCAL_SRC_FILES := $(call all-subdir-java-files)
+LOCAL_SRC_FILES := \
+    $(call all-subdir-java-files) \
+    $(call all-Iaidl-files-under, src)
 
 LOCAL_MODULE := analytics-utils
 LOCAL_MODULE_TAGS := optional
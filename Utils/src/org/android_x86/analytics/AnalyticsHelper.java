@@ -43,6 +43,11 @@ public class AnalyticsHelper {
 
     public static final String TARGET_PACKAGE_NAME = "org.android_x86.analytics";
     public static final String TARGET_CLASS_NAME = "org.android_x86.analytics.AnalyticsService";
+    /**
+     * Signature permission to query foreground app through IAnalyticsService.
+     */
+    public static final String PERMISSION_GET_FOREGROUND =
+            "org.android_x86.analytics.permission.GET_FOREGROUND";
 
     public static final String ACTION_HIT_SCREEN = "org.android_x86.hit_screen";
     public static final String ACTION_SCREEN_ON = "org.android_x86.screen_on";
@@ -66,11 +71,18 @@ public class AnalyticsHelper {
     public static final String EXTRA_EVENT_ACTION = "event_action";
     public static final String EXTRA_EVENT_LABEL = "event_label";
     public static final String EXTRA_EVENT_VALUE = "event_value";
+    public static final String EXTRA_EVENT_LABEL_PACKAGE = "event_label_package";
+    public static final String EXTRA_EVENT_HISTOGRAM = "event_histogram";
 
     public static final String EXTRA_HAS_SAMPLING = "has_sampling";
 
     private AnalyticsHelper() {}
 
+    /**
+     * @deprecated Updates the shared resources configuration twice per call, use
+     * {@link #getChineseText(Context, ApplicationInfo, int)} instead.
+     */
+    @Deprecated
     public static CharSequence getChineseText(PackageManager pm, ApplicationInfo info, int id)
             throws NameNotFoundException {
         Resources res = pm.getResourcesForApplication(info);
@@ -89,14 +101,30 @@ public class AnalyticsHelper {
         return s;
     }
 
-    private static String getLabel(PackageManager pm, String packageName)
+    /**
+     * Gets Chinese text of other package without touching its shared resources configuration.
+     */
+    public static CharSequence getChineseText(Context context, ApplicationInfo info, int id)
+            throws NameNotFoundException {
+        Configuration config = new Configuration();
+        config.setLocale(Locale.SIMPLIFIED_CHINESE);
+        Resources res = context.createPackageContext(info.packageName, 0)
+                .createConfigurationContext(config)
+                .getResources();
+        try {
+            return res.getText(id);
+        } catch (NotFoundException e) {
+            return "";
+        }
+    }
+
+    private static String getLabel(Context context, ApplicationInfo info)
             throws NameNotFoundException {
-        ApplicationInfo info = pm.getApplicationInfo(packageName, 0);
         if (info.nonLocalizedLabel != null) {
             return info.nonLocalizedLabel.toString();
         }
         if (info.labelRes != 0) {
-            CharSequence label = getChineseText(pm, info, info.labelRes);
+            CharSequence label = getChineseText(context, info, info.labelRes);
             if (label != null) {
                 return label.toString();
             }
@@ -108,19 +136,16 @@ public class AnalyticsHelper {
     /**
      * Gets package label: {package name} or {package name}/{app Chinese name}
      */
-    private static String getPackageLabel(PackageManager pm, String packageName) {
-        if (packageName == null || packageName.isEmpty()) {
-            return "";
-        }
+    static String getPackageLabel(Context context, ApplicationInfo info) {
         try {
-            String label = getLabel(pm, packageName);
+            String label = getLabel(context, info);
             if (label.isEmpty()) {
-                return packageName;
+                return info.packageName;
             } else {
-                return packageName + '/' + label;
+                return info.packageName + '/' + label;
             }
         } catch (NameNotFoundException e) {
-            return packageName;
+            return info.packageName;
         }
     }
 
@@ -128,7 +153,15 @@ public class AnalyticsHelper {
      * Gets package label: {package name} or {package name}/{app Chinese name}
      */
     static String getPackageLabel(Context context, String packageName) {
-        return getPackageLabel(context.getPackageManager(), packageName);
+        if (packageName == null || packageName.isEmpty()) {
+            return "";
+        }
+        try {
+            ApplicationInfo info = context.getPackageManager().getApplicationInfo(packageName, 0);
+            return getPackageLabel(context, info);
+        } catch (NameNotFoundException e) {
+            return packageName;
+        }
     }
 
     private static final String WIDGET_PREFIX = "android.widget.";
@@ -263,7 +296,9 @@ public class AnalyticsHelper {
         private final String mCategory;
         private final String mAction;
         private String mLabel;
+        private String mLabelPackage;
         private Long mValue;
+        private byte[] mHistogram;
         private Boolean mSampling;
 
         private CustomEvent(Context context, String category, String action) {
@@ -274,13 +309,17 @@ public class AnalyticsHelper {
 
         /**
          * Sets other App package as label.
+         * The label is resolved to {package name}/{app Chinese name} by AnalyticsService.
          */
         public CustomEvent setAppLabel(String packageName) {
-            return setLabel(getPackageLabel(mContext, packageName));
+            mLabel = packageName;
+            mLabelPackage = packageName;
+            return this;
         }
 
         public CustomEvent setLabel(String label) {
             mLabel = label;
+            mLabelPackage = null;
             return this;
         }
 
@@ -289,6 +328,15 @@ public class AnalyticsHelper {
             return this;
         }
 
+        /**
+         * Sets histogram of values. AnalyticsService merges it into the daily histogram of the
+         * same category and action instead of sending one event.
+         */
+        public CustomEvent setHistogram(LogLinearHistogram histogram) {
+            mHistogram = histogram.toByteArray();
+            return this;
+        }
+
         private void send(boolean hasSampling) {
             mSampling = hasSampling;
             if (DEBUG) {
@@ -303,7 +351,9 @@ public class AnalyticsHelper {
             intent.putExtra(EXTRA_EVENT_CATEGORY, mCategory);
             intent.putExtra(EXTRA_EVENT_ACTION, mAction);
             intent.putExtra(EXTRA_EVENT_LABEL, mLabel);
+            intent.putExtra(EXTRA_EVENT_LABEL_PACKAGE, mLabelPackage);
             intent.putExtra(EXTRA_EVENT_VALUE, mValue);
+            intent.putExtra(EXTRA_EVENT_HISTOGRAM, mHistogram);
             intent.putExtra(EXTRA_HAS_SAMPLING, hasSampling);
             mContext.startService(intent);
         }
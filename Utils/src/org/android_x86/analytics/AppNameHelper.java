@@ -15,17 +15,49 @@
  */
 package org.android_x86.analytics;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import android.app.ActivityManager;
 import android.app.ActivityManager.RunningTaskInfo;
+import android.content.ComponentName;
 import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.IBinder;
+import android.os.RemoteException;
 import android.text.TextUtils;
+import android.util.LruCache;
 
+/**
+ * Resolves labels of packages, and the current package from AnalyticsService.
+ *
+ * Querying AnalyticsService needs AnalyticsHelper.PERMISSION_GET_FOREGROUND, without it the
+ * current package comes from running tasks. The service stays bound until release().
+ */
 public class AppNameHelper {
-    private final Map<String, String> mAppNameMap = new HashMap<String, String>();
+    private static final int MAX_CACHED_LABELS = 64;
+
+    // LruCache is bounded and synchronized
+    private final LruCache<String, String> mAppNameMap =
+            new LruCache<String, String>(MAX_CACHED_LABELS);
+
+    private volatile IAnalyticsService mService;
+    // application context while bound, for unbinding
+    private Context mBoundContext;
+    // stop binding once the service denies access
+    private boolean mDenied;
+
+    private final ServiceConnection mConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            mService = IAnalyticsService.Stub.asInterface(service);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            mService = null;
+        }
+    };
 
     /**
      * Gets package label: {package name} or {package name}/{app Chinese name}
@@ -55,9 +87,28 @@ public class AppNameHelper {
     }
 
     /**
-     * Gets current package name
+     * Gets current package name from AnalyticsService's foreground tracker, falls back to
+     * running tasks until the service is bound.
      */
-    private static String getCurrentPackageName(Context context) {
+    private String getCurrentPackageName(Context context) {
+        IAnalyticsService service = getService(context);
+        if (service != null) {
+            try {
+                String packageName = service.getForegroundPackageName();
+                if (packageName != null) {
+                    return packageName;
+                }
+            } catch (RemoteException e) {
+                mService = null;
+            } catch (SecurityException e) {
+                // caller lacks PERMISSION_GET_FOREGROUND
+                synchronized (this) {
+                    mDenied = true;
+                }
+                release();
+            }
+        }
+
         // get current task
         ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
         List<RunningTaskInfo> runningTasks = am.getRunningTasks(1);
@@ -70,4 +121,29 @@ public class AppNameHelper {
         return "";
     }
 
+    private synchronized IAnalyticsService getService(Context context) {
+        if (mBoundContext == null && !mDenied) {
+            Intent intent = new Intent();
+            intent.setComponent(new ComponentName(
+                    AnalyticsHelper.TARGET_PACKAGE_NAME, AnalyticsHelper.TARGET_CLASS_NAME));
+            Context appContext = context.getApplicationContext();
+            if (appContext.bindService(intent, mConnection, Context.BIND_AUTO_CREATE)) {
+                mBoundContext = appContext;
+            }
+        }
+        return mService;
+    }
+
+    /**
+     * Unbinds AnalyticsService, e.g. when the owner of this helper is destroyed. The service is
+     * bound again on next query.
+     */
+    public synchronized void release() {
+        if (mBoundContext != null) {
+            mBoundContext.unbindService(mConnection);
+            mBoundContext = null;
+        }
+        mService = null;
+    }
+
 }
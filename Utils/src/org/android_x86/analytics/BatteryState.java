@@ -20,24 +20,34 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.BatteryManager;
 
+/**
+ * Immutable snapshot of ACTION_BATTERY_CHANGED extras.
+ */
 public class BatteryState {
 
-    private final Intent mIntent;
+    private final int mStatus;
+    private final int mPlugged;
+    private final int mLevel;
+    private final int mScale;
+    private final boolean mPresent;
 
     public BatteryState(Intent batteryChangedIntent) {
-        mIntent = batteryChangedIntent;
+        mStatus = batteryChangedIntent.getIntExtra(BatteryManager.EXTRA_STATUS,
+                BatteryManager.BATTERY_STATUS_UNKNOWN);
+        mPlugged = batteryChangedIntent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
+        mLevel = batteryChangedIntent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        mScale = batteryChangedIntent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        mPresent = batteryChangedIntent.getBooleanExtra(BatteryManager.EXTRA_PRESENT, false);
     }
 
     /**
-     * Gets BatteryState or null.
+     * Gets current BatteryState from the sticky broadcast or null, for one-shot callers.
+     * Long-lived components should use BatteryTracker instead.
      */
     public static BatteryState of(Context context) {
         Intent intent = context.registerReceiver(null,
                 new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
-        if (intent == null) {
-            return null;
-        }
-        return new BatteryState(intent);
+        return intent != null ? new BatteryState(intent) : null;
     }
 
     /**
@@ -45,29 +55,35 @@ public class BatteryState {
      * if failed to get.
      */
     public int getStatus() {
-        return mIntent.getIntExtra(BatteryManager.EXTRA_STATUS,
-                BatteryManager.BATTERY_STATUS_UNKNOWN);
+        return mStatus;
     }
 
     /**
      * Gets BatteryManager.EXTRA_PLUGGED, return 0 if failed to get.
      */
     public int getPlugged() {
-        return mIntent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
+        return mPlugged;
     }
 
     /**
      * Gets BatteryManager.EXTRA_LEVEL, return -1 if failed to get.
      */
     public int getLevel() {
-        return mIntent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        return mLevel;
     }
 
     /**
      * Gets BatteryManager.EXTRA_SCALE, return -1 if failed to get.
      */
     public int getScale() {
-        return mIntent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        return mScale;
+    }
+
+    /**
+     * Gets BatteryManager.EXTRA_PRESENT, return false if failed to get.
+     */
+    public boolean isPresent() {
+        return mPresent;
     }
 
     /**
@@ -119,7 +135,8 @@ public class BatteryState {
     }
 
     /**
-     * Whether power is sufficient to do some heavy tasks
+     * Whether power is sufficient to do some heavy tasks, reads the sticky broadcast for
+     * one-shot callers. Long-lived components should use BatteryTracker.isPowerSufficient().
      */
     public static boolean isPowerSufficient(Context context) {
         BatteryState state = of(context);
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide battery state, subscribes ACTION_BATTERY_CHANGED once and keeps the latest
+ * BatteryState, so readers need neither IPC nor Intent parsing.
+ */
+public class BatteryTracker {
+    private static BatteryTracker sInstance;
+
+    private volatile BatteryState mState;
+    private final CopyOnWriteArrayList<Listener> mListeners =
+            new CopyOnWriteArrayList<Listener>();
+
+    public interface Listener {
+        /**
+         * Called on main thread when level, status or plugged changes.
+         */
+        void onBatteryChanged(BatteryState state);
+    }
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            BatteryState previous = mState;
+            BatteryState state = new BatteryState(intent);
+            mState = state;
+            // ignore voltage and temperature only changes
+            if (previous != null
+                    && previous.getLevel() == state.getLevel()
+                    && previous.getStatus() == state.getStatus()
+                    && previous.getPlugged() == state.getPlugged()) {
+                return;
+            }
+            for (Listener listener : mListeners) {
+                listener.onBatteryChanged(state);
+            }
+        }
+    };
+
+    private BatteryTracker(Context context) {
+        Intent intent = context.registerReceiver(mReceiver,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (intent != null) {
+            mState = new BatteryState(intent);
+        }
+    }
+
+    public static synchronized BatteryTracker getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new BatteryTracker(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Gets the latest BatteryState or null if unknown.
+     */
+    public BatteryState getState() {
+        return mState;
+    }
+
+    /**
+     * Whether power is sufficient to do some heavy tasks, false if battery state is unknown.
+     */
+    public boolean isPowerSufficient() {
+        BatteryState state = mState;
+        return state != null && state.isPowerSufficient();
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+}
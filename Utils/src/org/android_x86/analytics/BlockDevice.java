@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Physical block device under /sys/block, i.e. a disk rather than a partition, loop, ram, zram
+ * or device mapper device.
+ */
+public class BlockDevice {
+    private static final String SYS_BLOCK = "/sys/block";
+    private static final long SECTOR_SIZE = 512;
+
+    public static final String TYPE_HDD = "hdd";
+    public static final String TYPE_SSD = "ssd";
+    public static final String TYPE_NVME = "nvme";
+    public static final String TYPE_EMMC = "emmc";
+    public static final String TYPE_SD = "sd";
+    public static final String TYPE_USB = "usb";
+
+    private final String mName;
+    private final String mType;
+    private final long mSizeBytes;
+    private final boolean mRemovable;
+
+    private BlockDevice(String name, String type, long sizeBytes, boolean removable) {
+        mName = name;
+        mType = type;
+        mSizeBytes = sizeBytes;
+        mRemovable = removable;
+    }
+
+    /**
+     * Gets kernel name, e.g. "sda" or "mmcblk0".
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Gets one of TYPE_* constants.
+     */
+    public String getType() {
+        return mType;
+    }
+
+    public long getSizeBytes() {
+        return mSizeBytes;
+    }
+
+    /**
+     * Checks whether device is removable or attached by USB.
+     */
+    public boolean isRemovable() {
+        return mRemovable;
+    }
+
+    /**
+     * Lists physical block devices sorted by name.
+     */
+    public static List<BlockDevice> list() {
+        List<BlockDevice> devices = new ArrayList<BlockDevice>();
+        String[] names = new File(SYS_BLOCK).list();
+        if (names == null) {
+            return devices;
+        }
+        Arrays.sort(names);
+        ProcFileReader reader = new ProcFileReader(256, 4096);
+        for (String name : names) {
+            BlockDevice device = of(name, reader);
+            if (device != null) {
+                devices.add(device);
+            }
+        }
+        return devices;
+    }
+
+    /**
+     * Gets physical block device by kernel name.
+     * @return the device, or null if not found or not a physical device
+     */
+    public static BlockDevice of(String name) {
+        return of(name, new ProcFileReader(256, 4096));
+    }
+
+    private static BlockDevice of(String name, ProcFileReader reader) {
+        File dir = new File(SYS_BLOCK, name);
+        // virtual devices have no backing device
+        if (!new File(dir, "device").exists()) {
+            return null;
+        }
+        long sizeBytes = reader.readLong(dir + "/size", 0) * SECTOR_SIZE;
+        boolean removable = reader.readLong(dir + "/removable", 0) != 0;
+        String type;
+        if (isUsb(dir)) {
+            type = TYPE_USB;
+            removable = true;
+        } else if (name.startsWith("nvme")) {
+            type = TYPE_NVME;
+        } else if (name.startsWith("mmcblk")) {
+            type = "SD".equals(readString(reader, dir + "/device/type")) ? TYPE_SD : TYPE_EMMC;
+        } else {
+            type = reader.readLong(dir + "/queue/rotational", 1) != 0 ? TYPE_HDD : TYPE_SSD;
+        }
+        return new BlockDevice(name, type, sizeBytes, removable);
+    }
+
+    private static boolean isUsb(File dir) {
+        try {
+            return dir.getCanonicalPath().contains("/usb");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static String readString(ProcFileReader reader, String path) {
+        try {
+            reader.read(path);
+        } catch (IOException e) {
+            return null;
+        }
+        return reader.nextLine() && reader.nextToken() ? reader.tokenAsString() : null;
+    }
+
+    @Override
+    public String toString() {
+        return "BlockDevice {name: " + mName
+                + " type: " + mType
+                + " size: " + mSizeBytes
+                + " removable: " + mRemovable + "}";
+    }
+}
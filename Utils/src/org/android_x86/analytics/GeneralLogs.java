@@ -21,7 +21,17 @@ import android.os.Parcelable;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Logs of key/value fields, e.g. a hardware inventory.
+ *
+ * Keys starting with '#' are reserved: "#category" for the category of logs, and
+ * "{key}#changed" for whether a field is changed since last upload.
+ */
 public class GeneralLogs implements Parcelable {
+    public static final String KEY_CATEGORY = "#category";
+    private static final String CHANGED_SUFFIX = "#changed";
+    private static final String RESERVED_PREFIX = "#";
+
     private final Map<String, String> mLogMap;
 
     public GeneralLogs() {
@@ -38,6 +48,38 @@ public class GeneralLogs implements Parcelable {
         return this;
     }
 
+    /**
+     * Sets field with its change flag.
+     */
+    public GeneralLogs set(String key, String value, boolean changed) {
+        mLogMap.put(key, value);
+        mLogMap.put(key + CHANGED_SUFFIX, changed ? "1" : "0");
+        return this;
+    }
+
+    public GeneralLogs setCategory(String category) {
+        mLogMap.put(KEY_CATEGORY, category);
+        return this;
+    }
+
+    public String getCategory() {
+        return mLogMap.get(KEY_CATEGORY);
+    }
+
+    /**
+     * Checks whether field is changed, fields without change flag are considered changed.
+     */
+    public boolean isChanged(String key) {
+        return !"0".equals(mLogMap.get(key + CHANGED_SUFFIX));
+    }
+
+    /**
+     * Checks whether key is a field rather than category or change flag.
+     */
+    public static boolean isField(String key) {
+        return !key.startsWith(RESERVED_PREFIX) && !key.endsWith(CHANGED_SUFFIX);
+    }
+
     public Map<String, String> getLogMap() {
         return mLogMap;
     }
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * HDR-style log-linear histogram of non-negative long values.
+ *
+ * Values below 2^subBucketBits are counted exactly, larger values are counted in buckets which
+ * split every power of 2 range into 2^subBucketBits linear sub-buckets, so the relative error
+ * is below 2^-subBucketBits. Values above maxValue are counted in the last bucket.
+ *
+ * Recording is constant time and does not allocate. Histograms with the same parameters can be
+ * merged and subtracted, and serialized with varints. Not thread safe.
+ */
+public class LogLinearHistogram {
+    private static final int SERIAL_VERSION = 1;
+    // bounds memory of deserialized histograms to 64 * 2^8 buckets
+    private static final int MAX_SUB_BUCKET_BITS = 8;
+
+    private final int mSubBucketBits;
+    private final long mMaxValue;
+    private final long[] mCounts;
+    private long mTotalCount;
+
+    /**
+     * @param subBucketBits precision, e.g. 5 for ~3% relative error
+     * @param maxValue max value which can be recorded precisely
+     */
+    public LogLinearHistogram(int subBucketBits, long maxValue) {
+        if (subBucketBits < 1 || subBucketBits > MAX_SUB_BUCKET_BITS || maxValue < 0) {
+            throw new IllegalArgumentException("subBucketBits: " + subBucketBits
+                    + " maxValue: " + maxValue);
+        }
+        mSubBucketBits = subBucketBits;
+        mMaxValue = maxValue;
+        mCounts = new long[indexOf(subBucketBits, maxValue) + 1];
+    }
+
+    /**
+     * Creates a copy of other histogram.
+     */
+    public LogLinearHistogram(LogLinearHistogram other) {
+        mSubBucketBits = other.mSubBucketBits;
+        mMaxValue = other.mMaxValue;
+        mCounts = other.mCounts.clone();
+        mTotalCount = other.mTotalCount;
+    }
+
+    private static int indexOf(int subBucketBits, long value) {
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        if (msb < subBucketBits) {
+            return (int) value;
+        }
+        int shift = msb - subBucketBits;
+        // (value >>> shift) is in [2^subBucketBits, 2^(subBucketBits + 1))
+        return (shift << subBucketBits) + (int) (value >>> shift);
+    }
+
+    /**
+     * Gets the lowest value counted in bucket.
+     */
+    private long lowestValueAt(int index) {
+        int shift = (index >>> mSubBucketBits) - 1;
+        if (shift < 0) {
+            return index;
+        }
+        long mantissa = (1L << mSubBucketBits) + (index & ((1 << mSubBucketBits) - 1));
+        return mantissa << shift;
+    }
+
+    /**
+     * Gets the highest value counted in bucket.
+     */
+    private long highestValueAt(int index) {
+        return index + 1 < mCounts.length ? lowestValueAt(index + 1) - 1 : mMaxValue;
+    }
+
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    public void record(long value, long count) {
+        if (value < 0) {
+            value = 0;
+        } else if (value > mMaxValue) {
+            value = mMaxValue;
+        }
+        mCounts[indexOf(mSubBucketBits, value)] += count;
+        mTotalCount += count;
+    }
+
+    public long getTotalCount() {
+        return mTotalCount;
+    }
+
+    public boolean isEmpty() {
+        return mTotalCount == 0;
+    }
+
+    /**
+     * Gets the highest value equivalent to the value at percentile, or 0 if empty.
+     * @param percentile in [0, 100]
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (mTotalCount == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(mTotalCount * percentile / 100));
+        long count = 0;
+        for (int i = 0; i < mCounts.length; i++) {
+            count += mCounts[i];
+            if (count >= target) {
+                return highestValueAt(i);
+            }
+        }
+        return mMaxValue;
+    }
+
+    /**
+     * Gets the highest value equivalent to the max recorded value, or 0 if empty.
+     */
+    public long getMaxValue() {
+        for (int i = mCounts.length - 1; i >= 0; i--) {
+            if (mCounts[i] != 0) {
+                return highestValueAt(i);
+            }
+        }
+        return 0;
+    }
+
+    private void checkCompatible(LogLinearHistogram other) {
+        if (other.mSubBucketBits != mSubBucketBits || other.mMaxValue != mMaxValue) {
+            throw new IllegalArgumentException("incompatible histogram");
+        }
+    }
+
+    /**
+     * Adds counts of other histogram with same parameters.
+     */
+    public void merge(LogLinearHistogram other) {
+        checkCompatible(other);
+        for (int i = 0; i < mCounts.length; i++) {
+            mCounts[i] += other.mCounts[i];
+        }
+        mTotalCount += other.mTotalCount;
+    }
+
+    /**
+     * Subtracts counts of other histogram with same parameters, e.g. an earlier snapshot.
+     */
+    public void subtract(LogLinearHistogram other) {
+        checkCompatible(other);
+        for (int i = 0; i < mCounts.length; i++) {
+            if (mCounts[i] < other.mCounts[i]) {
+                throw new IllegalArgumentException("negative count at bucket " + i);
+            }
+        }
+        for (int i = 0; i < mCounts.length; i++) {
+            mCounts[i] -= other.mCounts[i];
+        }
+        mTotalCount -= other.mTotalCount;
+    }
+
+    public void reset() {
+        for (int i = 0; i < mCounts.length; i++) {
+            mCounts[i] = 0;
+        }
+        mTotalCount = 0;
+    }
+
+    /**
+     * Serializes as varints: version, subBucketBits, maxValue, then (skipped empty buckets,
+     * count) of every non-empty bucket.
+     */
+    public byte[] toByteArray() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, SERIAL_VERSION);
+        writeVarint(out, mSubBucketBits);
+        writeVarint(out, mMaxValue);
+        int previous = -1;
+        for (int i = 0; i < mCounts.length; i++) {
+            if (mCounts[i] != 0) {
+                writeVarint(out, i - previous - 1);
+                writeVarint(out, mCounts[i]);
+                previous = i;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Deserializes histogram from toByteArray().
+     * @throws IllegalArgumentException if data is invalid
+     */
+    public static LogLinearHistogram fromByteArray(byte[] data) {
+        int[] position = new int[1];
+        if (readVarint(data, position) != SERIAL_VERSION) {
+            throw new IllegalArgumentException("unknown version");
+        }
+        int subBucketBits = (int) readVarint(data, position);
+        long maxValue = readVarint(data, position);
+        LogLinearHistogram histogram = new LogLinearHistogram(subBucketBits, maxValue);
+        long index = -1;
+        while (position[0] < data.length) {
+            index += readVarint(data, position) + 1;
+            if (index < 0 || index >= histogram.mCounts.length) {
+                throw new IllegalArgumentException("bucket out of range: " + index);
+            }
+            long count = readVarint(data, position);
+            histogram.mCounts[(int) index] = count;
+            histogram.mTotalCount += count;
+        }
+        return histogram;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(byte[] data, int[] position) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position[0] >= data.length) {
+                throw new IllegalArgumentException("truncated varint");
+            }
+            byte b = data[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    @Override
+    public String toString() {
+        return "LogLinearHistogram {count: " + mTotalCount
+                + " p50: " + getValueAtPercentile(50)
+                + " p90: " + getValueAtPercentile(90)
+                + " p99: " + getValueAtPercentile(99)
+                + " max: " + getMaxValue() + "}";
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reader of procfs and sysfs text files, which parses in place without allocation.
+ *
+ * A file is read whole into a reused buffer, then walked line by line. Within a line, tokens
+ * are separated by spaces or tabs, or by a given delimiter for "key: value" lines and names
+ * containing spaces. The current token is examined by typed accessors, only tokenAsString()
+ * and restOfLine() allocate.
+ *
+ * <pre>
+ * while (reader.nextLine()) {
+ *     if (reader.nextField(':') && reader.tokenEquals("MemTotal")) {
+ *         reader.nextToken();
+ *         memTotalKb = reader.tokenAsLong();
+ *     }
+ * }
+ * </pre>
+ *
+ * Not thread safe.
+ */
+public class ProcFileReader {
+    private static final int DEFAULT_CAPACITY = 8 * 1024;
+    private static final int DEFAULT_MAX_CAPACITY = 1024 * 1024;
+
+    private final int mMaxCapacity;
+    private byte[] mBuffer;
+    private int mLength;
+
+    // current line, next line starts after mLineEnd
+    private int mLineStart;
+    private int mLineEnd;
+    // position of next token in current line
+    private int mPosition;
+    // current token
+    private int mTokenStart;
+    private int mTokenEnd;
+
+    public ProcFileReader() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_CAPACITY);
+    }
+
+    /**
+     * @param capacity initial buffer size
+     * @param maxCapacity max buffer size, longer files are truncated
+     */
+    public ProcFileReader(int capacity, int maxCapacity) {
+        mBuffer = new byte[capacity];
+        mMaxCapacity = maxCapacity;
+    }
+
+    /**
+     * Reads whole file, positioned before its first line.
+     */
+    public void read(String path) throws IOException {
+        mLength = 0;
+        rewind();
+        FileInputStream in = new FileInputStream(path);
+        try {
+            int n;
+            while ((n = in.read(mBuffer, mLength, mBuffer.length - mLength)) > 0) {
+                mLength += n;
+                if (mLength == mBuffer.length) {
+                    if (mBuffer.length >= mMaxCapacity) {
+                        break;
+                    }
+                    mBuffer = Arrays.copyOf(mBuffer,
+                            Math.min(mBuffer.length * 2, mMaxCapacity));
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the first number in file, e.g. a sysfs attribute.
+     * @return the number, or defaultValue if file can not be read or has no number
+     */
+    public long readLong(String path, long defaultValue) {
+        try {
+            read(path);
+        } catch (IOException e) {
+            return defaultValue;
+        }
+        if (nextLine() && nextToken() && isNumber()) {
+            return tokenAsLong();
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Moves back before the first line.
+     */
+    public void rewind() {
+        mLineStart = 0;
+        mLineEnd = -1;
+        mPosition = 0;
+        mTokenStart = 0;
+        mTokenEnd = 0;
+    }
+
+    /**
+     * Moves to the next line.
+     * @return false if no more lines
+     */
+    public boolean nextLine() {
+        int start = mLineEnd + 1;
+        if (start >= mLength) {
+            return false;
+        }
+        int end = start;
+        while (end < mLength && mBuffer[end] != '\n') {
+            end++;
+        }
+        mLineStart = start;
+        mLineEnd = end;
+        mPosition = start;
+        mTokenStart = start;
+        mTokenEnd = start;
+        return true;
+    }
+
+    /**
+     * Moves to the next token separated by spaces or tabs in current line.
+     * @return false if no more tokens
+     */
+    public boolean nextToken() {
+        int start = skipSpaces(mPosition);
+        if (start >= mLineEnd) {
+            mPosition = mLineEnd;
+            return false;
+        }
+        int end = start;
+        while (end < mLineEnd && !isSpace(mBuffer[end])) {
+            end++;
+        }
+        mTokenStart = start;
+        mTokenEnd = end;
+        mPosition = end;
+        return true;
+    }
+
+    /**
+     * Moves to the next field, which ends at delimiter or end of line, without the delimiter
+     * and surrounding spaces.
+     * @return false if no more fields
+     */
+    public boolean nextField(char delimiter) {
+        int start = skipSpaces(mPosition);
+        if (start >= mLineEnd) {
+            mPosition = mLineEnd;
+            return false;
+        }
+        int end = start;
+        while (end < mLineEnd && mBuffer[end] != delimiter) {
+            end++;
+        }
+        mPosition = end < mLineEnd ? end + 1 : end;
+        while (end > start && isSpace(mBuffer[end - 1])) {
+            end--;
+        }
+        mTokenStart = start;
+        mTokenEnd = end;
+        return true;
+    }
+
+    /**
+     * Checks whether current token equals ASCII string.
+     */
+    public boolean tokenEquals(String s) {
+        int length = mTokenEnd - mTokenStart;
+        if (length != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (mBuffer[mTokenStart + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether current token starts with ASCII string.
+     */
+    public boolean tokenStartsWith(String s) {
+        int length = s.length();
+        if (mTokenEnd - mTokenStart < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (mBuffer[mTokenStart + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether current token starts with a decimal number.
+     */
+    public boolean isNumber() {
+        int start = mTokenStart;
+        if (start < mTokenEnd && mBuffer[start] == '-') {
+            start++;
+        }
+        return start < mTokenEnd && isDigit(mBuffer[start]);
+    }
+
+    /**
+     * Parses leading decimal number of current token, 0 if none.
+     */
+    public long tokenAsLong() {
+        int i = mTokenStart;
+        boolean negative = i < mTokenEnd && mBuffer[i] == '-';
+        if (negative) {
+            i++;
+        }
+        long value = 0;
+        for (; i < mTokenEnd && isDigit(mBuffer[i]); i++) {
+            value = value * 10 + (mBuffer[i] - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Gets the next token of current line as a number.
+     * @return the number, or defaultValue if no more tokens or not a number
+     */
+    public long nextLong(long defaultValue) {
+        return nextToken() && isNumber() ? tokenAsLong() : defaultValue;
+    }
+
+    /**
+     * Gets 64 bits FNV-1a hash of current token, e.g. to look up a table without allocation.
+     */
+    public long tokenHash() {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = mTokenStart; i < mTokenEnd; i++) {
+            hash ^= mBuffer[i] & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    public String tokenAsString() {
+        return new String(mBuffer, mTokenStart, mTokenEnd - mTokenStart,
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the rest of current line without surrounding spaces.
+     */
+    public String restOfLine() {
+        int start = skipSpaces(mPosition);
+        int end = mLineEnd;
+        while (end > start && isSpace(mBuffer[end - 1])) {
+            end--;
+        }
+        mPosition = mLineEnd;
+        return new String(mBuffer, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private int skipSpaces(int position) {
+        while (position < mLineEnd && isSpace(mBuffer[position])) {
+            position++;
+        }
+        return position;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
@@ -0,0 +1,49 @@
+#
+# Copyright (C) 2016 Jide Technology Ltd.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+# JVM tests of parsers without Android dependencies, run on host:
+#   make analytics-host-tests
+#   java -cp $ANDROID_HOST_OUT/framework/analytics-host-tests.jar \
+#       org.junit.runner.JUnitCore org.android_x86.analytics.AllTests
+
+LOCAL_PATH := $(call my-dir)
+
+include $(CLEAR_VARS)
+
+# sources under test, they must not depend on the Android framework
+LOCAL_SRC_FILES := \
+    $(call all-java-files-under, src) \
+    ../Utils/src/org/android_x86/analytics/BlockDevice.java \
+    ../Utils/src/org/android_x86/analytics/LogLinearHistogram.java \
+    ../Utils/src/org/android_x86/analytics/ProcFileReader.java \
+    ../Service/src/org/android_x86/analytics/DiskStats.java \
+    ../Service/src/org/android_x86/analytics/DrainLedger.java \
+    ../Service/src/org/android_x86/analytics/DropBoxParser.java \
+    ../Service/src/org/android_x86/analytics/ExceptionFingerprint.java \
+    ../Service/src/org/android_x86/analytics/HyperLogLog.java \
+    ../Service/src/org/android_x86/analytics/ProcessStat.java \
+    ../Service/src/org/android_x86/analytics/SpaceSavingSketch.java \
+    ../Service/src/org/android_x86/analytics/StringInterner.java \
+    ../Service/src/org/android_x86/analytics/WakeupSourceTable.java \
+    ../HardwareCollector/src/org/android_x86/hardwarecollector/KernelLogParser.java \
+
+LOCAL_JAVA_RESOURCE_DIRS := fixtures
+LOCAL_STATIC_JAVA_LIBRARIES := junit-host
+
+LOCAL_MODULE := analytics-host-tests
+LOCAL_MODULE_TAGS := tests
+
+include $(BUILD_HOST_JAVA_LIBRARY)
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import org.android_x86.hardwarecollector.KernelLogParserTest;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+/**
+ * All JVM tests.
+ */
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+        DiskStatsTest.class,
+        DrainLedgerTest.class,
+        DropBoxParserTest.class,
+        ExceptionFingerprintTest.class,
+        HyperLogLogTest.class,
+        KernelLogParserTest.class,
+        LogLinearHistogramTest.class,
+        ProcFileReaderTest.class,
+        ProcessStatTest.class,
+        SpaceSavingSketchTest.class,
+        WakeupSourceTableTest.class,
+})
+public class AllTests {
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+public class DiskStatsTest {
+    private final Map<String, Long> mRecorded = new HashMap<String, Long>();
+    private final DiskStats.Recorder mRecorder = new DiskStats.Recorder() {
+        @Override
+        public void record(String key, long value) {
+            mRecorded.put(key, value);
+        }
+    };
+    private String mPath;
+
+    @Before
+    public void setUp() throws IOException {
+        mPath = Fixtures.path("proc/diskstats");
+    }
+
+    private DiskStats create(String... names) {
+        String[] prefixes = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            prefixes[i] = names[i] + "/";
+        }
+        return new DiskStats(mPath, names, prefixes, mRecorder);
+    }
+
+    /**
+     * Replaces the sampled file with fixture, as /proc/diskstats changes in place.
+     */
+    private void update(String name) throws IOException {
+        assertTrue(new File(Fixtures.path(name)).renameTo(new File(mPath)));
+    }
+
+    @Test
+    public void firstSampleRecordsNothing() {
+        assertTrue(create("sda").sample(1000));
+        assertTrue(mRecorded.isEmpty());
+    }
+
+    @Test
+    public void windowOfDeltas() throws IOException {
+        DiskStats stats = create("sda");
+        assertTrue(stats.sample(1000));
+        update("proc/diskstats_later");
+        assertTrue(stats.sample(11000));
+        // 500 reads and 500 writes in 10 seconds
+        assertEquals(100, (long) mRecorded.get("sda/iops"));
+        // 20000 sectors of 512 bytes
+        assertEquals(1000, (long) mRecorded.get("sda/kb_per_second"));
+        assertEquals(20, (long) mRecorded.get("sda/queue_depth_centi"));
+        // 400 + 1600 ms of requests, 800 ms busy, for 1000 requests
+        assertEquals(2000, (long) mRecorded.get("sda/await_us"));
+        assertEquals(800, (long) mRecorded.get("sda/service_time_us"));
+        assertNull(mRecorded.get("sda1/iops"));
+    }
+
+    @Test
+    public void wrappedCounterSkipsWindow() throws IOException {
+        DiskStats stats = create("mmcblk0");
+        assertTrue(stats.sample(1000));
+        update("proc/diskstats_later");
+        // reads wrapped from 4294967000 to 200
+        assertTrue(stats.sample(11000));
+        assertTrue(mRecorded.isEmpty());
+
+        update("proc/diskstats_wrapped");
+        assertTrue(stats.sample(21000));
+        // 100 reads and 10 writes, 4 + 10 ms of requests, 4 ms busy
+        assertEquals(11, (long) mRecorded.get("mmcblk0/iops"));
+        assertEquals(127, (long) mRecorded.get("mmcblk0/await_us"));
+        assertEquals(36, (long) mRecorded.get("mmcblk0/service_time_us"));
+    }
+
+    @Test
+    public void missingDeviceRecordsNothing() throws IOException {
+        DiskStats stats = create("sdb");
+        assertTrue(stats.sample(1000));
+        update("proc/diskstats_later");
+        assertTrue(stats.sample(11000));
+        assertTrue(mRecorded.isEmpty());
+    }
+
+    @Test
+    public void resetStartsNewWindow() throws IOException {
+        DiskStats stats = create("sda");
+        assertTrue(stats.sample(1000));
+        stats.reset();
+        update("proc/diskstats_later");
+        assertTrue(stats.sample(11000));
+        assertTrue(mRecorded.isEmpty());
+    }
+
+    @Test
+    public void unreadableFile() {
+        assertTrue(new File(mPath).delete());
+        assertFalse(create("sda").sample(1000));
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DrainLedgerTest {
+    private static final double DELTA = 1e-9;
+    private static final long MINUTE = 60 * 1000;
+
+    private DrainLedger mLedger;
+
+    @Before
+    public void setUp() {
+        mLedger = new DrainLedger(4);
+        mLedger.onBatteryChanged(80, false, 0);
+    }
+
+    private double getDrain(String packageName) {
+        for (int id = 0; id < mLedger.size(); id++) {
+            if (mLedger.getPackage(id).equals(packageName)) {
+                return mLedger.getDrain(id);
+            }
+        }
+        return 0;
+    }
+
+    private long getDischargingMillis(String packageName) {
+        for (int id = 0; id < mLedger.size(); id++) {
+            if (mLedger.getPackage(id).equals(packageName)) {
+                return mLedger.getDischargingMillis(id);
+            }
+        }
+        return 0;
+    }
+
+    @Test
+    public void splitInProportionToForegroundTime() {
+        mLedger.onHitScreen("a", 0);
+        mLedger.onHitScreen("b", 3 * MINUTE);
+        mLedger.onBatteryChanged(78, false, 4 * MINUTE);
+        assertEquals(2, mLedger.getTotalDrain(), DELTA);
+        assertEquals(1.5, getDrain("a"), DELTA);
+        assertEquals(0.5, getDrain("b"), DELTA);
+        assertEquals(3 * MINUTE, getDischargingMillis("a"));
+        assertEquals(MINUTE, getDischargingMillis("b"));
+    }
+
+    @Test
+    public void screenOffStaysUnattributed() {
+        mLedger.onHitScreen("a", 0);
+        mLedger.onScreenOff(MINUTE);
+        mLedger.onScreenOn(3 * MINUTE);
+        mLedger.onBatteryChanged(79, false, 4 * MINUTE);
+        assertEquals(1, mLedger.getTotalDrain(), DELTA);
+        assertEquals(0.5, getDrain("a"), DELTA);
+    }
+
+    @Test
+    public void sameLevelKeepsInterval() {
+        mLedger.onHitScreen("a", 0);
+        mLedger.onBatteryChanged(80, false, MINUTE);
+        mLedger.onHitScreen("b", MINUTE);
+        mLedger.onBatteryChanged(79, false, 2 * MINUTE);
+        assertEquals(0.5, getDrain("a"), DELTA);
+        assertEquals(0.5, getDrain("b"), DELTA);
+    }
+
+    @Test
+    public void chargingIsNotAttributed() {
+        mLedger.onHitScreen("a", 0);
+        mLedger.onBatteryChanged(81, true, MINUTE);
+        mLedger.onBatteryChanged(81, false, 2 * MINUTE);
+        // the interval restarts when charging stops
+        mLedger.onBatteryChanged(80, false, 3 * MINUTE);
+        assertEquals(1, mLedger.getTotalDrain(), DELTA);
+        assertEquals(1, getDrain("a"), DELTA);
+        assertEquals(MINUTE, getDischargingMillis("a"));
+    }
+
+    @Test
+    public void unknownLevelIsNotAttributed() {
+        mLedger.onHitScreen("a", 0);
+        mLedger.onBatteryChanged(-1, false, MINUTE);
+        mLedger.onBatteryChanged(79, false, 2 * MINUTE);
+        assertEquals(0, mLedger.getTotalDrain(), DELTA);
+    }
+
+    @Test
+    public void newDayKeepsRunningInterval() {
+        mLedger.onHitScreen("a", 0);
+        mLedger.onBatteryChanged(79, false, MINUTE);
+        mLedger.onHitScreen("b", 2 * MINUTE);
+        mLedger.accumulate(3 * MINUTE);
+        mLedger.newDay();
+        assertEquals(0, mLedger.getTotalDrain(), DELTA);
+        assertEquals(0, getDrain("a"), DELTA);
+
+        // a is in foreground from 1 to 2 and b from 2 to 5 minutes
+        mLedger.onBatteryChanged(78, false, 5 * MINUTE);
+        assertEquals(1, mLedger.getTotalDrain(), DELTA);
+        assertEquals(0.25, getDrain("a"), DELTA);
+        assertEquals(0.75, getDrain("b"), DELTA);
+    }
+
+    @Test
+    public void packagesOverLimitAreIgnored() {
+        for (int i = 0; i < 5; i++) {
+            mLedger.onHitScreen("p" + i, i * MINUTE);
+        }
+        mLedger.onBatteryChanged(79, false, 5 * MINUTE);
+        assertEquals(4, mLedger.size());
+        assertEquals(1, mLedger.getTotalDrain(), DELTA);
+        assertEquals(0.2, getDrain("p0"), DELTA);
+    }
+}
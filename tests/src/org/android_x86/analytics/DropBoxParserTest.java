@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+public class DropBoxParserTest {
+    private static String[] parse(String tag, String fixture) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new FileReader(Fixtures.path("dropbox/" + fixture)));
+        try {
+            return DropBoxParser.parse(tag, reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void crash() throws IOException {
+        assertArrayEquals(new String[] {"com.example.app",
+                "java.lang.RuntimeException@android.app.ActivityThread.performLaunchActivity"
+                + "<java.lang.NullPointerException"},
+                parse("data_app_crash", "data_app_crash"));
+    }
+
+    @Test
+    public void crashWithoutStackTrace() throws IOException {
+        assertNull(parse("system_app_crash", "system_app_crash_empty"));
+    }
+
+    @Test
+    public void anr() throws IOException {
+        assertArrayEquals(new String[] {"com.example.app", "ANR:Input dispatching timed out"},
+                parse("data_app_anr", "data_app_anr"));
+    }
+
+    @Test
+    public void tombstone() throws IOException {
+        // no headers, the process comes from the pid line
+        assertArrayEquals(new String[] {"/system/bin/mediaserver", "SIGSEGV@libc.so(strlen)"},
+                parse("SYSTEM_TOMBSTONE", "SYSTEM_TOMBSTONE"));
+    }
+
+    @Test
+    public void watchdogOfSystemServer() throws IOException {
+        assertArrayEquals(new String[] {"android",
+                "watchdog:Blocked in handler on foreground thread"},
+                parse("system_server_watchdog", "system_server_watchdog"));
+    }
+
+    @Test
+    public void notCollected() throws IOException {
+        assertFalse(DropBoxParser.isCollected("SYSTEM_BOOT"));
+        assertTrue(DropBoxParser.isCollected("data_app_anr"));
+        assertNull(DropBoxParser.parse("SYSTEM_BOOT",
+                new BufferedReader(new StringReader("Subject: x\n"))));
+    }
+
+    @Test
+    public void parseNativeFrame() {
+        assertEquals("libc.so(strlen)", DropBoxParser.parseNativeFrame(
+                "    #00 pc 0001a2b4  /system/lib/libc.so (strlen+17)"));
+        assertEquals("libfoo.so(Foo::bar())", DropBoxParser.parseNativeFrame(
+                "    #00 pc 00000000000045c0  /vendor/lib64/libfoo.so (Foo::bar()+32)"));
+        // stripped library without symbol
+        assertEquals("libfoo.so", DropBoxParser.parseNativeFrame(
+                "    #00 pc 000045c0  /vendor/lib/libfoo.so"));
+        assertEquals("libdl.so(dlopen)", DropBoxParser.parseNativeFrame(
+                "    #00 pc 000045c0  /system/lib/libdl.so (dlopen)"));
+        assertEquals("libc.so(abort)", DropBoxParser.parseNativeFrame(
+                "    #00 pc 000000000006b0d8  /system/lib64/libc.so (abort+120) (BuildId: 1a2b)"));
+        assertEquals("libfoo.so", DropBoxParser.parseNativeFrame(
+                "    #00 pc 00000000000045c0  /vendor/lib64/libfoo.so (BuildId: 1a2b)"));
+    }
+
+    @Test
+    public void getReason() {
+        assertEquals("unknown", DropBoxParser.getReason(null));
+        assertEquals("Input dispatching timed out",
+                DropBoxParser.getReason("Input dispatching timed out (Waiting to send key)"));
+        assertEquals("Broadcast of Intent",
+                DropBoxParser.getReason("Broadcast of Intent { act=android.intent.action.X }"));
+        assertEquals("executing service com.example/.Service",
+                DropBoxParser.getReason("executing service com.example/.Service"));
+        StringBuilder longSubject = new StringBuilder();
+        for (int i = 0; i < 30; i++) {
+            longSubject.append("word ");
+        }
+        assertEquals(100, DropBoxParser.getReason(longSubject.toString()).length());
+    }
+}
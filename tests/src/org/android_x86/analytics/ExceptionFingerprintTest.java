@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ExceptionFingerprintTest {
+    @Test
+    public void classAndTopFrame() {
+        assertEquals("java.lang.IllegalStateException@com.example.Foo.bar",
+                ExceptionFingerprint.of("java.lang.IllegalStateException: id 1234\n"
+                        + "\tat com.example.Foo.bar(Foo.java:12)\n"
+                        + "\tat com.example.Foo.main(Foo.java:5)\n"));
+    }
+
+    @Test
+    public void messageIsIgnored() {
+        String a = ExceptionFingerprint.of("java.io.IOException: file a\n\tat a.B.c(B.java:1)\n");
+        String b = ExceptionFingerprint.of("java.io.IOException: file b\n\tat a.B.c(B.java:2)\n");
+        assertEquals(a, b);
+    }
+
+    @Test
+    public void lastCauseIsRoot() {
+        assertEquals("java.lang.RuntimeException@a.B.c<java.lang.NullPointerException",
+                ExceptionFingerprint.of("java.lang.RuntimeException: wrapped\n"
+                        + "\tat a.B.c(B.java:1)\n"
+                        + "Caused by: java.lang.IllegalStateException: middle\n"
+                        + "\tat a.B.d(B.java:2)\n"
+                        + "Caused by: java.lang.NullPointerException\n"
+                        + "\tat a.B.e(B.java:3)\n"));
+    }
+
+    @Test
+    public void noFrame() {
+        assertEquals("java.lang.OutOfMemoryError", ExceptionFingerprint.of(
+                "java.lang.OutOfMemoryError"));
+    }
+
+    @Test
+    public void truncated() {
+        StringBuilder name = new StringBuilder("a");
+        for (int i = 0; i < 300; i++) {
+            name.append('b');
+        }
+        assertEquals(200, ExceptionFingerprint.of(name + ": x\n\tat a.B.c(B.java:1)\n").length());
+    }
+}
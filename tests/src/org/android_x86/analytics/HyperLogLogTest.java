@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Base64;
+
+public class HyperLogLogTest {
+    private static final int PRECISION = 10;
+    // 3 standard errors of 1024 registers
+    private static final double TOLERANCE = 3 * 1.04 / Math.sqrt(1 << PRECISION);
+
+    private static HyperLogLog create(int from, int to) {
+        HyperLogLog hll = new HyperLogLog(PRECISION);
+        for (int i = from; i < to; i++) {
+            hll.offer("com.example.app" + i);
+        }
+        return hll;
+    }
+
+    private static void assertEstimate(long expected, HyperLogLog hll) {
+        long estimate = hll.estimate();
+        assertTrue(expected + " estimated as " + estimate,
+                Math.abs(estimate - expected) <= expected * TOLERANCE);
+    }
+
+    @Test
+    public void empty() {
+        HyperLogLog hll = new HyperLogLog(PRECISION);
+        assertTrue(hll.isEmpty());
+        assertEquals(0, hll.estimate());
+        hll.offer("a");
+        assertFalse(hll.isEmpty());
+        hll.clear();
+        assertTrue(hll.isEmpty());
+    }
+
+    @Test
+    public void duplicatesAreNotCounted() {
+        HyperLogLog hll = create(0, 100);
+        long estimate = hll.estimate();
+        for (int i = 0; i < 10; i++) {
+            hll.merge(create(0, 100));
+        }
+        assertEquals(estimate, hll.estimate());
+    }
+
+    @Test
+    public void smallRangeIsLinearCounting() {
+        // few collisions in 1024 registers, so linear counting is close to exact
+        for (int n = 1; n <= 10; n++) {
+            assertEquals(n, create(0, n).estimate());
+        }
+        assertEstimate(100, create(0, 100));
+    }
+
+    @Test
+    public void estimateIsWithinErrorBound() {
+        for (int n = 1000; n <= 100000; n *= 10) {
+            assertEstimate(n, create(0, n));
+        }
+        assertEstimate(50000, create(0, 50000));
+    }
+
+    @Test
+    public void mergeEqualsUnion() {
+        HyperLogLog a = create(0, 6000);
+        HyperLogLog b = create(4000, 10000);
+        a.merge(b);
+        assertArrayEquals(create(0, 10000).toByteArray(), a.toByteArray());
+        assertEstimate(10000, a);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeRejectsOtherPrecision() {
+        new HyperLogLog(PRECISION).merge(new HyperLogLog(PRECISION + 1));
+    }
+
+    @Test
+    public void packingRoundTrip() {
+        HyperLogLog hll = create(0, 20000);
+        byte[] data = hll.toByteArray();
+        // precision byte and 1024 registers of 6 bits
+        assertEquals(1 + 768, data.length);
+        assertEquals(PRECISION, data[0]);
+
+        HyperLogLog copy = HyperLogLog.fromByteArray(data);
+        assertArrayEquals(data, copy.toByteArray());
+        assertEquals(hll.estimate(), copy.estimate());
+
+        // as sent in base64 by CompactRecord
+        String encoded = Base64.getEncoder().encodeToString(data);
+        assertArrayEquals(data,
+                HyperLogLog.fromByteArray(Base64.getDecoder().decode(encoded)).toByteArray());
+    }
+
+    @Test
+    public void packingKeepsLargestRank() {
+        HyperLogLog hll = new HyperLogLog(PRECISION);
+        // the index bits are 0 and no other bit is set, so the rank is 64 - PRECISION + 1
+        hll.offerHash(0);
+        // the last register with rank 1
+        hll.offerHash(-1L);
+        HyperLogLog copy = HyperLogLog.fromByteArray(hll.toByteArray());
+        assertArrayEquals(hll.toByteArray(), copy.toByteArray());
+        assertEquals(hll.estimate(), copy.estimate());
+        assertEquals(2, copy.estimate());
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class LogLinearHistogramTest {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final long MAX_VALUE = 3600 * 1000;
+
+    private static LogLinearHistogram create() {
+        return new LogLinearHistogram(SUB_BUCKET_BITS, MAX_VALUE);
+    }
+
+    /**
+     * Gets the value which value is counted as, the highest value of its bucket.
+     */
+    private static long bucketOf(LogLinearHistogram histogram, long value) {
+        LogLinearHistogram single = new LogLinearHistogram(histogram);
+        single.reset();
+        single.record(value);
+        return single.getMaxValue();
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        LogLinearHistogram histogram = create();
+        for (long value = 0; value < 2 << SUB_BUCKET_BITS; value++) {
+            assertEquals(value, bucketOf(histogram, value));
+        }
+    }
+
+    @Test
+    public void bucketBoundariesAroundPowersOfTwo() {
+        LogLinearHistogram histogram = create();
+        for (int msb = SUB_BUCKET_BITS + 1; (1L << (msb + 1)) <= MAX_VALUE; msb++) {
+            long power = 1L << msb;
+            long width = power >>> SUB_BUCKET_BITS;
+            // the bucket of a power of 2 starts at it, and the one below ends before it
+            assertEquals(power - 1, bucketOf(histogram, power - 1));
+            assertEquals(power + width - 1, bucketOf(histogram, power));
+            assertEquals(power + width - 1, bucketOf(histogram, power + width - 1));
+            assertEquals(power + 2 * width - 1, bucketOf(histogram, power + width));
+        }
+    }
+
+    @Test
+    public void valuesOutOfRangeAreClamped() {
+        LogLinearHistogram histogram = create();
+        assertEquals(0, bucketOf(histogram, -1));
+        assertEquals(MAX_VALUE, bucketOf(histogram, MAX_VALUE));
+        assertEquals(MAX_VALUE, bucketOf(histogram, MAX_VALUE + 1));
+        assertEquals(MAX_VALUE, bucketOf(histogram, Long.MAX_VALUE));
+        // the last bucket ends at max value, not at its power of 2 boundary
+        assertEquals(MAX_VALUE, bucketOf(histogram, MAX_VALUE - 1));
+    }
+
+    @Test
+    public void fullRangeOfLong() {
+        LogLinearHistogram histogram = new LogLinearHistogram(SUB_BUCKET_BITS, Long.MAX_VALUE);
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(1L << 62);
+        assertEquals(Long.MAX_VALUE, histogram.getMaxValue());
+        assertEquals((1L << 62) + (1L << (62 - SUB_BUCKET_BITS)) - 1,
+                histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void percentilesAreWithinRelativeError() {
+        Random random = new Random(42);
+        long[] values = new long[10000];
+        LogLinearHistogram histogram = create();
+        for (int i = 0; i < values.length; i++) {
+            // spread over orders of magnitude
+            values[i] = (long) Math.exp(random.nextDouble() * Math.log(MAX_VALUE));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        assertEquals(values.length, histogram.getTotalCount());
+        double[] percentiles = {0, 1, 10, 25, 50, 75, 90, 99, 99.9, 100};
+        for (double percentile : percentiles) {
+            long exact = values[Math.max(0,
+                    (int) Math.ceil(values.length * percentile / 100) - 1)];
+            long value = histogram.getValueAtPercentile(percentile);
+            assertTrue(percentile + "%: " + value + " < " + exact, value >= exact);
+            assertTrue(percentile + "%: " + value + " vs " + exact,
+                    value - exact <= exact >> SUB_BUCKET_BITS);
+        }
+        assertEquals(histogram.getValueAtPercentile(100), histogram.getMaxValue());
+    }
+
+    @Test
+    public void empty() {
+        LogLinearHistogram histogram = create();
+        assertTrue(histogram.isEmpty());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(0, histogram.getMaxValue());
+    }
+
+    @Test
+    public void varintRoundTrip() {
+        LogLinearHistogram histogram = create();
+        histogram.record(0);
+        histogram.record(7, 3);
+        histogram.record(1000, 200);
+        histogram.record(MAX_VALUE, 1L << 40);
+        byte[] data = histogram.toByteArray();
+        LogLinearHistogram copy = LogLinearHistogram.fromByteArray(data);
+        assertArrayEquals(data, copy.toByteArray());
+        assertEquals(histogram.getTotalCount(), copy.getTotalCount());
+        assertEquals(histogram.getValueAtPercentile(50), copy.getValueAtPercentile(50));
+        assertEquals(histogram.getMaxValue(), copy.getMaxValue());
+
+        // empty histogram is only the header
+        assertTrue(LogLinearHistogram.fromByteArray(create().toByteArray()).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedDataIsRejected() {
+        LogLinearHistogram histogram = create();
+        histogram.record(1000, 200);
+        byte[] data = histogram.toByteArray();
+        LogLinearHistogram.fromByteArray(Arrays.copyOf(data, data.length - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bucketOutOfRangeIsRejected() {
+        // version 1, 5 sub-bucket bits, max value 100, then count 1 after skipping 200 buckets
+        LogLinearHistogram.fromByteArray(new byte[] {1, 5, 100, (byte) 0xc8, 0x01, 1});
+    }
+
+    @Test
+    public void mergeAndSubtractAreSymmetric() {
+        LogLinearHistogram a = create();
+        LogLinearHistogram b = create();
+        for (int i = 0; i < 1000; i++) {
+            a.record(i * 37);
+            b.record(i * i);
+        }
+        LogLinearHistogram sum = new LogLinearHistogram(a);
+        sum.merge(b);
+        assertEquals(a.getTotalCount() + b.getTotalCount(), sum.getTotalCount());
+
+        LogLinearHistogram other = new LogLinearHistogram(b);
+        other.merge(a);
+        assertArrayEquals(sum.toByteArray(), other.toByteArray());
+
+        sum.subtract(b);
+        assertArrayEquals(a.toByteArray(), sum.toByteArray());
+        sum.subtract(a);
+        assertTrue(sum.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void subtractBelowZeroIsRejected() {
+        LogLinearHistogram a = create();
+        LogLinearHistogram b = create();
+        b.record(5);
+        a.subtract(b);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeRejectsOtherPrecision() {
+        create().merge(new LogLinearHistogram(SUB_BUCKET_BITS + 1, MAX_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void subtractRejectsOtherMaxValue() {
+        create().subtract(new LogLinearHistogram(SUB_BUCKET_BITS, MAX_VALUE * 2));
+    }
+}
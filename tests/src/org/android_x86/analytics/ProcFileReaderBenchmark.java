@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Compares ProcFileReader with the BufferedReader and String.split() parsing it replaces, on
+ * fixture files and on the live /proc of the host if present.
+ *
+ * <pre>
+ * java -cp analytics-host-tests.jar org.android_x86.analytics.ProcFileReaderBenchmark
+ * </pre>
+ */
+public class ProcFileReaderBenchmark {
+    private static final int WARMUP_ITERATIONS = 20000;
+    private static final int ITERATIONS = 100000;
+
+    private interface Parser {
+        long parse(String path) throws IOException;
+    }
+
+    private static final Parser MEMINFO_BUFFERED_READER = new Parser() {
+        @Override
+        public long parse(String path) throws IOException {
+            BufferedReader reader = new BufferedReader(new FileReader(path));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\\s+");
+                    if (fields[0].equals("MemAvailable:")) {
+                        return Long.parseLong(fields[1]);
+                    }
+                }
+                return -1;
+            } finally {
+                reader.close();
+            }
+        }
+    };
+
+    private static final Parser MEMINFO_PROC_FILE_READER = new Parser() {
+        private final ProcFileReader mReader = new ProcFileReader();
+
+        @Override
+        public long parse(String path) throws IOException {
+            mReader.read(path);
+            while (mReader.nextLine()) {
+                if (mReader.nextField(':') && mReader.tokenEquals("MemAvailable")) {
+                    return mReader.nextLong(-1);
+                }
+            }
+            return -1;
+        }
+    };
+
+    private static final Parser CPUINFO_BUFFERED_READER = new Parser() {
+        @Override
+        public long parse(String path) throws IOException {
+            BufferedReader reader = new BufferedReader(new FileReader(path));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.contains("model name\t: ")) {
+                        return line.substring("model name\t: ".length()).length();
+                    }
+                }
+                return -1;
+            } finally {
+                reader.close();
+            }
+        }
+    };
+
+    private static final Parser CPUINFO_PROC_FILE_READER = new Parser() {
+        private final ProcFileReader mReader = new ProcFileReader();
+
+        @Override
+        public long parse(String path) throws IOException {
+            mReader.read(path);
+            while (mReader.nextLine()) {
+                if (mReader.nextField(':') && mReader.tokenEquals("model name")) {
+                    return mReader.restOfLine().length();
+                }
+            }
+            return -1;
+        }
+    };
+
+    public static void main(String[] args) throws IOException {
+        run("fixture meminfo", Fixtures.path("proc/meminfo"),
+                MEMINFO_BUFFERED_READER, MEMINFO_PROC_FILE_READER);
+        run("fixture cpuinfo", Fixtures.path("proc/cpuinfo"),
+                CPUINFO_BUFFERED_READER, CPUINFO_PROC_FILE_READER);
+        if (new java.io.File("/proc/meminfo").canRead()) {
+            run("/proc/meminfo", "/proc/meminfo",
+                    MEMINFO_BUFFERED_READER, MEMINFO_PROC_FILE_READER);
+        }
+    }
+
+    private static void run(String name, String path, Parser before, Parser after)
+            throws IOException {
+        if (before.parse(path) != after.parse(path)) {
+            throw new AssertionError(name + ": parsers disagree");
+        }
+        System.out.println(name);
+        measure("  BufferedReader", path, before);
+        measure("  ProcFileReader", path, after);
+    }
+
+    private static void measure(String name, String path, Parser parser) throws IOException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            parser.parse(path);
+        }
+        long bytesBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            parser.parse(path);
+        }
+        long nanos = System.nanoTime() - start;
+        long bytes = bytesBefore < 0 ? -1 : (getAllocatedBytes() - bytesBefore) / ITERATIONS;
+        System.out.println(String.format("%s: %d ns/op, %d bytes/op",
+                name, nanos / ITERATIONS, bytes));
+    }
+
+    /**
+     * Gets bytes allocated by current thread, or -1 if the JVM can not tell.
+     */
+    private static long getAllocatedBytes() {
+        Object bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
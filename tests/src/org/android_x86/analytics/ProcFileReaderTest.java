@@ -0,0 +1,231 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+public class ProcFileReaderTest {
+    @Test
+    public void nextFieldSplitsKeyValueLines() throws IOException {
+        ProcFileReader reader = new ProcFileReader();
+        reader.read(Fixtures.path("proc/meminfo"));
+        long total = -1;
+        long available = -1;
+        while (reader.nextLine()) {
+            assertTrue(reader.nextField(':'));
+            if (reader.tokenEquals("MemTotal")) {
+                total = reader.nextLong(-1);
+                assertTrue(reader.nextToken());
+                assertTrue(reader.tokenEquals("kB"));
+            } else if (reader.tokenEquals("MemAvailable")) {
+                available = reader.nextLong(-1);
+            }
+        }
+        assertEquals(3941540, total);
+        assertEquals(1873400, available);
+    }
+
+    @Test
+    public void nextFieldTrimsSpacesAroundDelimiter() throws IOException {
+        ProcFileReader reader = new ProcFileReader();
+        reader.read(Fixtures.path("proc/cpuinfo"));
+        while (reader.nextLine()) {
+            if (reader.nextField(':') && reader.tokenEquals("model name")) {
+                assertEquals("Intel(R) Core(TM) i5-7200U CPU @ 2.50GHz", reader.restOfLine());
+                return;
+            }
+        }
+        throw new AssertionError("no model name");
+    }
+
+    @Test
+    public void nextFieldAtEndOfLine() throws IOException {
+        ProcFileReader reader = new ProcFileReader();
+        reader.read(Fixtures.path("proc/loadavg"));
+        assertTrue(reader.nextLine());
+        assertTrue(reader.nextField(':'));
+        assertEquals("0.57 1.20 0.48 2/523 1234", reader.tokenAsString());
+        assertFalse(reader.nextField(':'));
+        assertFalse(reader.nextToken());
+    }
+
+    @Test
+    public void dotSplitsLoadAverage() throws IOException {
+        ProcFileReader reader = new ProcFileReader();
+        reader.read(Fixtures.path("proc/loadavg"));
+        assertTrue(reader.nextLine());
+        // "0.57 1.20 ...", integer part then the fraction token
+        assertTrue(reader.nextField('.'));
+        assertEquals(0, reader.tokenAsLong());
+        assertTrue(reader.nextToken());
+        assertEquals(57, reader.tokenAsLong());
+        assertTrue(reader.nextField('.'));
+        assertEquals(1, reader.tokenAsLong());
+        assertTrue(reader.nextToken());
+        assertEquals(20, reader.tokenAsLong());
+    }
+
+    @Test
+    public void dotAndEqualsSplitPressure() throws IOException {
+        ProcFileReader reader = new ProcFileReader();
+        reader.read(Fixtures.path("proc/pressure_memory"));
+        assertTrue(reader.nextLine());
+        assertTrue(reader.nextToken());
+        assertTrue(reader.tokenEquals("some"));
+        assertTrue(reader.nextField('='));
+        assertTrue(reader.tokenEquals("avg10"));
+        assertTrue(reader.nextField('.'));
+        assertEquals(12, reader.tokenAsLong());
+        assertTrue(reader.nextToken());
+        assertEquals(34, reader.tokenAsLong());
+
+        assertTrue(reader.nextLine());
+        assertTrue(reader.nextToken());
+        assertTrue(reader.tokenEquals("full"));
+    }
+
+    @Test
+    public void tokensOfStat() throws IOException {
+        ProcFileReader reader = new ProcFileReader();
+        reader.read(Fixtures.path("proc/stat"));
+        assertTrue(reader.nextLine());
+        assertTrue(reader.nextToken());
+        assertTrue(reader.tokenEquals("cpu"));
+        long[] expected = {74608, 2520, 24433, 1117073, 6176, 4054, 0, 0, 0, 0};
+        for (long value : expected) {
+            assertEquals(value, reader.nextLong(-1));
+        }
+        assertEquals(-1, reader.nextLong(-1));
+        assertTrue(reader.nextLine());
+        assertTrue(reader.nextToken());
+        assertTrue(reader.tokenStartsWith("cpu"));
+        assertFalse(reader.tokenEquals("cpu"));
+    }
+
+    @Test
+    public void negativeNumber() throws IOException {
+        ProcFileReader reader = new ProcFileReader();
+        assertEquals(-1234000, reader.readLong(Fixtures.path("sys/current_now"), 0));
+        reader.read(Fixtures.path("sys/current_now"));
+        assertTrue(reader.nextLine());
+        assertTrue(reader.nextToken());
+        assertTrue(reader.isNumber());
+        assertEquals("-1234000", reader.tokenAsString());
+    }
+
+    @Test
+    public void notANumber() throws IOException {
+        ProcFileReader reader = new ProcFileReader();
+        reader.read(Fixtures.path("proc/meminfo"));
+        assertTrue(reader.nextLine());
+        assertTrue(reader.nextToken());
+        assertFalse(reader.isNumber());
+        assertEquals(0, reader.tokenAsLong());
+        assertEquals(7, reader.readLong(Fixtures.path("proc/meminfo"), 7));
+    }
+
+    @Test
+    public void missingTrailingNewline() throws IOException {
+        ProcFileReader reader = new ProcFileReader();
+        assertEquals(2500000, reader.readLong(Fixtures.path("sys/scaling_max_freq"), 0));
+        reader.read(Fixtures.path("sys/scaling_max_freq"));
+        assertTrue(reader.nextLine());
+        assertEquals("2500000", reader.restOfLine());
+        assertFalse(reader.nextLine());
+    }
+
+    @Test
+    public void missingFile() throws IOException {
+        ProcFileReader reader = new ProcFileReader();
+        assertEquals(-1, reader.readLong("/nonexistent/file", -1));
+        try {
+            reader.read("/nonexistent/file");
+            throw new AssertionError("read should fail");
+        } catch (FileNotFoundException e) {
+            // expected
+        }
+        assertFalse(reader.nextLine());
+    }
+
+    @Test
+    public void truncatedAtMaxCapacity() throws IOException {
+        // the first two lines of meminfo are 56 bytes, 8 bytes of the third line remain
+        ProcFileReader reader = new ProcFileReader(16, 64);
+        reader.read(Fixtures.path("proc/meminfo"));
+        int lines = 0;
+        String last = null;
+        while (reader.nextLine()) {
+            lines++;
+            last = reader.restOfLine();
+        }
+        assertEquals(3, lines);
+        assertEquals("MemAvail", last);
+    }
+
+    @Test
+    public void bufferGrowsAndIsReused() throws IOException {
+        ProcFileReader reader = new ProcFileReader(16, 1024 * 1024);
+        reader.read(Fixtures.path("proc/cpuinfo"));
+        int processors = 0;
+        while (reader.nextLine()) {
+            if (reader.nextField(':') && reader.tokenEquals("processor")) {
+                processors++;
+            }
+        }
+        assertEquals(2, processors);
+
+        // a shorter file must not see the rest of the previous one
+        reader.read(Fixtures.path("proc/loadavg"));
+        assertTrue(reader.nextLine());
+        assertFalse(reader.nextLine());
+    }
+
+    @Test
+    public void rewind() throws IOException {
+        ProcFileReader reader = new ProcFileReader();
+        reader.read(Fixtures.path("proc/stat"));
+        assertTrue(reader.nextLine());
+        assertTrue(reader.nextLine());
+        reader.rewind();
+        assertTrue(reader.nextLine());
+        assertTrue(reader.nextToken());
+        assertTrue(reader.tokenEquals("cpu"));
+    }
+
+    @Test
+    public void tokenHashMatchesForEqualTokens() throws IOException {
+        ProcFileReader reader = new ProcFileReader();
+        reader.read(Fixtures.path("proc/stat"));
+        reader.nextLine();
+        reader.nextToken();
+        long cpu = reader.tokenHash();
+        reader.nextLine();
+        reader.nextToken();
+        long cpu0 = reader.tokenHash();
+        reader.rewind();
+        reader.nextLine();
+        reader.nextToken();
+        assertEquals(cpu, reader.tokenHash());
+        assertTrue(cpu != cpu0);
+    }
+}
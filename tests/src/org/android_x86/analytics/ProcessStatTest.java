@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class ProcessStatTest {
+    private final ProcFileReader mReader = new ProcFileReader(512, 1024);
+
+    private long readStartTicks(String fixture) throws IOException {
+        return ProcessStat.readStartTicks(mReader, Fixtures.path("proc/" + fixture));
+    }
+
+    @Test
+    public void startTime() throws IOException {
+        assertEquals(5678, readStartTicks("self_stat"));
+    }
+
+    @Test
+    public void commWithSpacesAndParentheses() throws IOException {
+        // comm "my) app) 2"
+        assertEquals(98765, readStartTicks("self_stat_paren"));
+    }
+
+    @Test
+    public void tooFewFields() throws IOException {
+        assertEquals(-1, readStartTicks("self_stat_short"));
+    }
+
+    @Test
+    public void missingFile() {
+        assertEquals(-1, ProcessStat.readStartTicks(mReader, "/nonexistent/stat"));
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+public class SpaceSavingSketchTest {
+    private static final int CAPACITY = 50;
+    private static final int KEYS = 1000;
+
+    /**
+     * Offers a Zipf-like stream, key i occurs with probability proportional to 1 / (i + 1).
+     */
+    private static void offerSkewed(SpaceSavingSketch sketch, Map<String, Long> exact,
+            int length, long seed) {
+        double[] cumulative = new double[KEYS];
+        double sum = 0;
+        for (int i = 0; i < KEYS; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        Random random = new Random(seed);
+        for (int n = 0; n < length; n++) {
+            int i = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            String key = "key" + (i < 0 ? -i - 1 : i);
+            sketch.offer(key);
+            Long count = exact.get(key);
+            exact.put(key, count == null ? 1 : count + 1);
+        }
+    }
+
+    private static void assertBounds(SpaceSavingSketch sketch, Map<String, Long> exact) {
+        long total = 0;
+        for (long count : exact.values()) {
+            total += count;
+        }
+        assertEquals(total, sketch.getTotal());
+        assertTrue(sketch.getMaxError() <= total / CAPACITY);
+
+        Set<String> monitored = new HashSet<String>();
+        for (int slot : sketch.getSlotsByCount()) {
+            String key = sketch.getKey(slot);
+            long count = exact.containsKey(key) ? exact.get(key) : 0;
+            assertTrue(key + " " + count + " > " + sketch.getCount(slot),
+                    count <= sketch.getCount(slot));
+            assertTrue(key + " " + count + " < " + sketch.getCount(slot) + " - "
+                    + sketch.getError(slot),
+                    sketch.getCount(slot) - sketch.getError(slot) <= count);
+            assertTrue(sketch.getError(slot) <= sketch.getMaxError());
+            monitored.add(key);
+        }
+        for (Map.Entry<String, Long> entry : exact.entrySet()) {
+            if (!monitored.contains(entry.getKey())) {
+                assertTrue(entry.getKey(), entry.getValue() <= sketch.getMaxError());
+            }
+        }
+    }
+
+    private static Set<String> getTopKeys(SpaceSavingSketch sketch, int k) {
+        Set<String> keys = new HashSet<String>();
+        int[] slots = sketch.getSlotsByCount();
+        for (int i = 0; i < k; i++) {
+            keys.add(sketch.getKey(slots[i]));
+        }
+        return keys;
+    }
+
+    private static Set<String> getTopKeys(final Map<String, Long> exact, int k) {
+        String[] keys = exact.keySet().toArray(new String[0]);
+        Arrays.sort(keys, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return Long.compare(exact.get(b), exact.get(a));
+            }
+        });
+        return new HashSet<String>(Arrays.asList(keys).subList(0, k));
+    }
+
+    @Test
+    public void exactUnderCapacity() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(CAPACITY);
+        for (int i = 0; i < 10; i++) {
+            for (int n = 0; n <= i; n++) {
+                sketch.offer("key" + i);
+            }
+        }
+        assertEquals(0, sketch.getMaxError());
+        int[] slots = sketch.getSlotsByCount();
+        assertEquals(10, slots.length);
+        for (int i = 0; i < slots.length; i++) {
+            assertEquals("key" + (9 - i), sketch.getKey(slots[i]));
+            assertEquals(10 - i, sketch.getCount(slots[i]));
+            assertEquals(0, sketch.getError(slots[i]));
+        }
+    }
+
+    @Test
+    public void replaceInheritsMinimum() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(2);
+        sketch.offer("a");
+        sketch.offer("a");
+        sketch.offer("a");
+        sketch.offer("b");
+        sketch.offer("c");
+        // c replaces b, the key with minimum count
+        int[] slots = sketch.getSlotsByCount();
+        assertEquals(2, slots.length);
+        assertEquals("c", sketch.getKey(slots[1]));
+        assertEquals(2, sketch.getCount(slots[1]));
+        assertEquals(1, sketch.getError(slots[1]));
+        assertEquals(2, sketch.getMaxError());
+        assertEquals(5, sketch.getTotal());
+    }
+
+    @Test
+    public void skewedStream() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(CAPACITY);
+        Map<String, Long> exact = new HashMap<String, Long>();
+        offerSkewed(sketch, exact, 100000, 1);
+        assertBounds(sketch, exact);
+        assertEquals(getTopKeys(exact, 10), getTopKeys(sketch, 10));
+    }
+
+    @Test
+    public void mergeKeepsBounds() {
+        SpaceSavingSketch a = new SpaceSavingSketch(CAPACITY);
+        SpaceSavingSketch b = new SpaceSavingSketch(CAPACITY);
+        Map<String, Long> exact = new HashMap<String, Long>();
+        offerSkewed(a, exact, 50000, 1);
+        offerSkewed(b, exact, 50000, 2);
+        a.merge(b);
+        assertBounds(a, exact);
+        assertEquals(getTopKeys(exact, 10), getTopKeys(a, 10));
+    }
+
+    @Test
+    public void mergeUnderCapacityIsExact() {
+        SpaceSavingSketch a = new SpaceSavingSketch(CAPACITY);
+        SpaceSavingSketch b = new SpaceSavingSketch(CAPACITY);
+        SpaceSavingSketch all = new SpaceSavingSketch(CAPACITY);
+        for (int i = 0; i < 20; i++) {
+            for (int n = 0; n <= i; n++) {
+                (i % 3 == 0 ? a : b).offer("key" + i);
+                (i % 2 == 0 ? a : b).offer("key" + i);
+                all.offer("key" + i);
+                all.offer("key" + i);
+            }
+        }
+        a.merge(b);
+        assertEquals(all.getTotal(), a.getTotal());
+        assertEquals(0, a.getMaxError());
+        int[] merged = a.getSlotsByCount();
+        int[] expected = all.getSlotsByCount();
+        assertEquals(expected.length, merged.length);
+        for (int i = 0; i < merged.length; i++) {
+            assertEquals(all.getKey(expected[i]), a.getKey(merged[i]));
+            assertEquals(all.getCount(expected[i]), a.getCount(merged[i]));
+        }
+    }
+
+    @Test
+    public void clear() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(CAPACITY);
+        sketch.offer("a");
+        sketch.clear();
+        assertTrue(sketch.isEmpty());
+        assertEquals(0, sketch.getTotal());
+        assertEquals(0, sketch.getSlotsByCount().length);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.analytics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class WakeupSourceTableTest {
+    private final ProcFileReader mReader = new ProcFileReader();
+    private final WakeupSourceTable mTable = new WakeupSourceTable();
+
+    private boolean parse(String name, boolean accumulate) throws IOException {
+        mReader.read(Fixtures.path("wakeup_sources/" + name));
+        return mTable.parse(mReader, accumulate);
+    }
+
+    /**
+     * Asserts daily {wakeups, activations, active ms} of source.
+     */
+    private void assertDaily(String name, long... expected) {
+        int slot = mTable.getSlot(name);
+        assertTrue(name, slot >= 0);
+        assertArrayEquals(name, expected, new long[] {mTable.getDailyWakeups(slot),
+                mTable.getDailyActivations(slot), mTable.getDailyActiveMillis(slot)});
+    }
+
+    @Test
+    public void newLayout() throws IOException {
+        assertTrue(parse("new", false));
+        assertTrue(parse("new_later", true));
+        assertDaily("PowerManagerService.WakeLocks", 0, 30, 15000);
+        assertDaily("alarmtimer", 4, 4, 12);
+        assertDaily("eventpoll", 1, 10, 40);
+    }
+
+    @Test
+    public void oldLayoutWithoutExpireCount() throws IOException {
+        assertTrue(parse("old", false));
+        assertTrue(parse("old_later", true));
+        assertDaily("PowerManagerService", 1, 5, 500);
+        assertDaily("alarm", 3, 3, 15);
+    }
+
+    @Test
+    public void firstSnapshotIsBaselineOnly() throws IOException {
+        assertTrue(parse("new", false));
+        assertEquals(4, mTable.size());
+        assertEquals(0, mTable.getTopSlots(10).length);
+    }
+
+    @Test
+    public void namesWithSpacesAndPadding() throws IOException {
+        assertTrue(parse("new", false));
+        // "%-12s" pads short names with spaces before the tab
+        assertTrue(mTable.getSlot("alarmtimer") >= 0);
+        assertTrue(mTable.getSlot("bq27541 battery") >= 0);
+        assertEquals(-1, mTable.getSlot("bq27541"));
+    }
+
+    @Test
+    public void countersResetBetweenSnapshots() throws IOException {
+        assertTrue(parse("new", false));
+        assertTrue(parse("new_later", true));
+        // re-registered, counters restarted below the snapshot
+        assertDaily("bq27541 battery", 1, 3, 250);
+        // registered after the snapshot
+        assertDaily("event0-1234", 5, 5, 50);
+    }
+
+    @Test
+    public void delta() {
+        assertEquals(5, WakeupSourceTable.delta(15, 10));
+        assertEquals(0, WakeupSourceTable.delta(10, 10));
+        assertEquals(3, WakeupSourceTable.delta(3, 10));
+    }
+
+    @Test
+    public void topSlotsByActiveTime() throws IOException {
+        assertTrue(parse("new", false));
+        assertTrue(parse("new_later", true));
+        int[] top = mTable.getTopSlots(3);
+        assertEquals(3, top.length);
+        assertEquals("PowerManagerService.WakeLocks", mTable.getName(top[0]));
+        assertEquals("bq27541 battery", mTable.getName(top[1]));
+        assertEquals("event0-1234", mTable.getName(top[2]));
+
+        mTable.clearDaily();
+        assertEquals(0, mTable.getTopSlots(3).length);
+        assertEquals(5, mTable.size());
+    }
+
+    @Test
+    public void unknownHeader() throws IOException {
+        assertFalse(parse("unknown", false));
+        assertEquals(0, mTable.size());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Jide Technology Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.android_x86.hardwarecollector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+public class KernelLogParserTest {
+    private final KernelLogParser mParser = new KernelLogParser();
+
+    private static byte[] record(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private void add(String record) {
+        byte[] bytes = record(record);
+        mParser.add(bytes, bytes.length);
+    }
+
+    @Test
+    public void parseSeq() {
+        byte[] r = record("6,1234,5678901,-;usb 1-1: new high-speed USB device\n");
+        assertEquals(1234, KernelLogParser.parseSeq(r, r.length));
+        // the header only
+        assertEquals(12, KernelLogParser.parseSeq(r, 4));
+        r = record("6;no seq\n");
+        assertEquals(-1, KernelLogParser.parseSeq(r, r.length));
+        r = record("6,;empty seq\n");
+        assertEquals(-1, KernelLogParser.parseSeq(r, r.length));
+    }
+
+    @Test
+    public void parseMessageOfKernel() {
+        byte[] r = record("3,42,100,-;i915 0000:00:02.0: GPU HANG: ecode 9:0:0x85dffffb\n"
+                + " SUBSYSTEM=pci\n DEVICE=+pci:0000:00:02.0\n");
+        assertTrue(mParser.parseMessage(r, r.length));
+        // the dictionary after the message is ignored
+        assertEquals("i915 0000:00:02.0: GPU HANG: ecode 9:0:0x85dffffb",
+                mParser.getMessage().toString());
+    }
+
+    @Test
+    public void parseMessageOfUserSpace() {
+        // facility 1 is user, e.g. init writing to kmsg
+        byte[] r = record("14,43,100,-;init: starting service 'zygote'...\n");
+        assertFalse(mParser.parseMessage(r, r.length));
+        r = record("malformed\n");
+        assertFalse(mParser.parseMessage(r, r.length));
+    }
+
+    @Test
+    public void normalize() {
+        assertEquals("usb N-N: reset high-speed USB device number N using xhci_hcd",
+                KernelLogParser.normalize(
+                        "usb 1-4: reset high-speed USB device number 3 using xhci_hcd"));
+        // numbers inside words such as driver names are kept
+        assertEquals("i915 N:N:N.N: GPU HANG: ecode N:N:N",
+                KernelLogParser.normalize("i915 0000:00:02.0: GPU HANG: ecode 9:0:0x85dffffb"));
+        StringBuilder longMessage = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            longMessage.append("word ");
+        }
+        assertEquals(120, KernelLogParser.normalize(longMessage).length());
+    }
+
+    @Test
+    public void countsBySignature() {
+        add("3,1,100,-;usb 1-4: reset high-speed USB device number 3 using xhci_hcd\n");
+        add("3,2,200,-;usb 2-1: reset high-speed USB device number 7 using xhci_hcd\n");
+        add("3,3,300,-;iwlwifi 0000:02:00.0: Direct firmware load for iwlwifi-8265-36.ucode"
+                + " failed with error -2\n");
+        add("6,4,400,-;usb 1-4: new high-speed USB device number 3 using xhci_hcd\n");
+        add("14,5,500,-;init: GPU HANG from user space is not counted\n");
+        Map<String, Integer> counts = mParser.getCounts();
+        assertEquals(2, counts.size());
+        assertEquals(2, (int) counts.get(
+                "usb_reset:usb N-N: reset high-speed USB device number N using xhci_hcd"));
+        assertEquals(1, (int) counts.get("firmware:iwlwifi N:N:N.N: Direct firmware load for "
+                + "iwlwifi-N-N.ucode failed with error -N"));
+
+        mParser.clear();
+        assertEquals(Collections.emptyMap(), mParser.getCounts());
+    }
+
+    @Test
+    public void signaturesAreBounded() {
+        for (int i = 0; i < 40; i++) {
+            add("3," + i + ",100,-;ACPI Error: method " + (char) ('A' + i % 26)
+                    + (char) ('A' + i / 26) + " failed\n");
+        }
+        Map<String, Integer> counts = mParser.getCounts();
+        assertEquals(32, counts.size());
+        assertEquals(40 - 31, (int) counts.get("other"));
+    }
+}